@@ -0,0 +1,11 @@
+package tavernnet.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Habilita los métodos @Scheduled: tareas periódicas de mantenimiento que se
+// ejecutan en segundo plano (ej: decaimiento de los posts en tendencia)
+@Configuration
+@EnableScheduling
+public class SchedulingConfiguration {
+}
@@ -44,6 +44,17 @@ public class SecurityConfiguration {
                 // Las parties son todas privadas
                 .requestMatchers(HttpMethod.POST, "/parties/**").authenticated()
 
+                // El estado de las tareas en segundo plano, solo para quien las
+                // ha pedido y los administradores (ver JobController)
+                .requestMatchers(HttpMethod.GET, "/jobs/**").authenticated()
+
+                // Las métricas solo las puede consultar un administrador
+                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
+
+                // Exportación e importación de datos
+                .requestMatchers("/admin/**").hasRole("ADMIN")
+
                 // En general, las operaciones de lectura están permitidas
                 .requestMatchers(HttpMethod.GET, "/**").permitAll()
 
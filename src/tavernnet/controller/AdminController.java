@@ -0,0 +1,93 @@
+package tavernnet.controller;
+
+import org.jspecify.annotations.NullMarked;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import tavernnet.exception.DuplicatedResourceException;
+import tavernnet.exception.InvalidParameterException;
+import tavernnet.service.ArchiveService;
+import tavernnet.service.UserImportService;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@RequestMapping("admin")
+@NullMarked
+public class AdminController {
+    private final ArchiveService archive;
+    private final UserImportService userImport;
+
+    @Autowired
+    public AdminController(ArchiveService archive, UserImportService userImport) {
+        this.archive = archive;
+        this.userImport = userImport;
+    }
+
+    /**
+     * <code>GET /admin/export/posts</code>
+     * <br/>
+     * Todos los posts, comentarios y likes, un documento por línea. Se
+     * escriben a medida que se leen de la base de datos.
+     * @return <code>200 OK</code> con <code>application/x-ndjson</code>.
+     */
+    @GetMapping("export/posts")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportPosts() {
+        return ResponseEntity
+            .ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .header(
+                HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename("posts.ndjson").build().toString()
+            )
+            .body(archive::exportTo);
+    }
+
+    /**
+     * <code>POST /admin/import/posts</code>
+     * <br/>
+     * Inserta los posts, comentarios y likes de un fichero generado por
+     * <code>GET /admin/export/posts</code>, a medida que se recibe.
+     * @param body Cuerpo de la petición, en <code>application/x-ndjson</code>.
+     * @return <code>200 OK</code> con los documentos insertados y el
+     * rendimiento; <code>400 Bad Request</code> si una línea no es válida y
+     * <code>409 Conflict</code> si un documento ya existe. En ambos casos se
+     * mantiene lo insertado antes del error.
+     */
+    @PostMapping(value = "import/posts", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ArchiveService.ImportReport importPosts(
+        InputStream body
+    ) throws IOException, InvalidParameterException, DuplicatedResourceException {
+        return archive.importFrom(body);
+    }
+
+    /**
+     * <code>POST /admin/import/users</code>
+     * <br/>
+     * Crea los usuarios de un fichero con un
+     * <code>{"username": "...", "password": "..."}</code> por línea, a medida
+     * que se recibe.
+     * @param body Cuerpo de la petición, en <code>application/x-ndjson</code>.
+     * @return <code>200 OK</code> con los usuarios creados, las líneas
+     * rechazadas (no válidas o con un usuario que ya existe) y el rendimiento.
+     */
+    @PostMapping(value = "import/users", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public UserImportService.ImportReport importUsers(
+        InputStream body
+    ) throws IOException {
+        return userImport.importFrom(body);
+    }
+}
@@ -2,11 +2,13 @@ package tavernnet.controller;
 
 import jakarta.validation.Valid;
 import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
 import jakarta.validation.constraints.NotBlank;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBuilder;
 
 import tavernnet.exception.*;
@@ -56,7 +58,8 @@ public class CharacterController {
                     CharacterController.class,
                     "getCharacter",
                     userId,
-                    newId)
+                    newId,
+                    null)
                 .build()
                 .toUri();
 
@@ -67,14 +70,19 @@ public class CharacterController {
      * <code>GET /users/{userid}/characters/{characterName}</code>
      * @param userId Identificador del usuario.
      * @param characterName Nombre del character.
-     * @return Personaje solicitado
+     * @return Personaje solicitado con su <code>ETag</code>, o <code>304 Not
+     * modified</code> si coincide con <code>If-None-Match</code>.
      */
     @GetMapping("{userid}/characters/{characterName}")
     @PreAuthorize("true")
-    public Character.PublicCharacter getCharacter(
+    public Character.@Nullable PublicCharacter getCharacter(
         @PathVariable("userid") @NotBlank String userId,
-        @PathVariable("characterName") @NotBlank String characterName
+        @PathVariable("characterName") @NotBlank String characterName,
+        WebRequest request
     ) throws ResourceNotFoundException {
+        if (request.checkNotModified(characterService.getCharacterETag(userId, characterName))) {
+            return null;
+        }
         return characterService.getCharacter(userId, characterName);
     }
 
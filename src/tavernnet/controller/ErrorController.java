@@ -19,8 +19,11 @@ import org.springframework.web.method.annotation.HandlerMethodValidationExceptio
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 import org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBuilder;
 import org.springframework.web.servlet.resource.NoResourceFoundException;
+import tavernnet.exception.DeadlineExceededException;
 import tavernnet.exception.DuplicatedResourceException;
 import tavernnet.exception.InvalidCredentialsException;
+import tavernnet.exception.InvalidCursorException;
+import tavernnet.exception.InvalidParameterException;
 import tavernnet.exception.LimitException;
 import tavernnet.exception.ResourceNotFoundException;
 import tavernnet.utils.patch.exceptions.JsonPatchFailedException;
@@ -252,6 +255,31 @@ public class ErrorController {
         return ErrorResponse.builder(ex, problem).build();
     }
 
+    // Cursor de paginación inválido
+    @ExceptionHandler(InvalidCursorException.class)
+    public ErrorResponse handleInvalidCursor(InvalidCursorException ex, HttpServletRequest request) {
+        log.warn("Invalid cursor {}: {}", request.getRequestURI(), ex.getMessage());
+        ProblemDetail problem = ProblemDetail.forStatus(HttpStatus.BAD_REQUEST);
+        problem.setTitle("Invalid pagination cursor");
+        problem.setDetail(ex.getMessage());
+        problem.setType(getType("invalid-cursor"));
+        problem.setProperty("path", request.getRequestURI());
+        return ErrorResponse.builder(ex, problem).build();
+    }
+
+    // Valor de un parámetro no soportado
+    @ExceptionHandler(InvalidParameterException.class)
+    public ErrorResponse handleInvalidParameter(InvalidParameterException ex, HttpServletRequest request) {
+        log.warn("Invalid parameter {}: {}", request.getRequestURI(), ex.getMessage());
+        ProblemDetail problem = ProblemDetail.forStatus(HttpStatus.BAD_REQUEST);
+        problem.setTitle("Invalid parameter value");
+        problem.setDetail(ex.getMessage());
+        problem.setType(getType("invalid-url-or-params"));
+        problem.setProperty("path", request.getRequestURI());
+        problem.setProperty("context", Map.of("parameter", ex.getParameter(), "providedValue", ex.getValue()));
+        return ErrorResponse.builder(ex, problem).build();
+    }
+
     // Recurso duplicado
     @ExceptionHandler(DuplicatedResourceException.class)
     public ErrorResponse handleDuplicatedResource(DuplicatedResourceException ex, HttpServletRequest request) {
@@ -274,6 +302,17 @@ public class ErrorController {
         return ErrorResponse.builder(ex, problem).build();
     }
 
+    // Una petición compuesta no ha terminado a tiempo
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ErrorResponse handleDeadline(DeadlineExceededException ex, HttpServletRequest request) {
+        log.warn("Deadline exceeded {}: {}", request.getRequestURI(), ex.getMessage());
+        ProblemDetail problem = ProblemDetail.forStatus(HttpStatus.GATEWAY_TIMEOUT);
+        problem.setTitle("Deadline exceeded");
+        problem.setDetail(ex.getMessage());
+        problem.setType(getType("deadline-exceeded"));
+        return ErrorResponse.builder(ex, problem).build();
+    }
+
     // JSON PATCH invalido
     @ExceptionHandler(JsonPatchFailedException.class)
     public ErrorResponse handleLimit(JsonPatchFailedException ex, HttpServletRequest request) {
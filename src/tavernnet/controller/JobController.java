@@ -0,0 +1,43 @@
+package tavernnet.controller;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import tavernnet.exception.ResourceNotFoundException;
+import tavernnet.model.Job;
+import tavernnet.service.JobService;
+import tavernnet.utils.ValidObjectId;
+
+@RestController
+@RequestMapping("jobs")
+@NullMarked
+public class JobController {
+    JobService jobs;
+
+    @Autowired
+    public JobController(JobService jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * <code>GET /jobs/{jobid}</code>
+     * @param jobId Identificador de la tarea.
+     * @return <code>200 OK</code> con el estado y el progreso de la tarea,
+     * <code>403 Forbidden</code> si no la ha pedido el usuario (salvo que sea
+     * administrador), <code>404 Not found</code> si no existe.
+     */
+    @GetMapping("{jobid}")
+    @PreAuthorize("hasRole('ADMIN') or @auth.isJobSubmitter(#jobId, principal)")
+    public Job.JobResponse getJob(
+        @PathVariable("jobid")
+        @ValidObjectId(message = "Invalid job id")
+        ObjectId jobId
+    ) throws ResourceNotFoundException {
+        return new Job.JobResponse(jobs.getJob(jobId));
+    }
+}
@@ -1,42 +1,202 @@
 package tavernnet.controller;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
 import org.bson.types.ObjectId;
 import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import tavernnet.exception.InvalidCursorException;
+import tavernnet.exception.InvalidParameterException;
 import tavernnet.exception.ResourceNotFoundException;
 import tavernnet.model.Comment;
+import tavernnet.model.CursorPage;
+import tavernnet.model.Job;
 import tavernnet.model.Post;
 import tavernnet.model.PostView;
+import tavernnet.model.SearchHit;
+import tavernnet.model.User;
+import tavernnet.service.AuthorService;
+import tavernnet.service.FeedHub;
 import tavernnet.service.PostService;
+import tavernnet.service.SearchService;
+import tavernnet.service.ViewService;
+import tavernnet.service.feed.ChronologicalRanker;
+import tavernnet.utils.NdjsonWriter;
 import tavernnet.utils.ValidObjectId;
 
-import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("posts")
 @NullMarked
 public class PostController {
+    // Parámetro para pedir la respuesta en streaming: ?format=ndjson
+    private static final String NDJSON_FORMAT = "format=ndjson";
+    // Parámetro para incluir los datos del autor: ?expand=author
+    private static final String EXPAND_AUTHOR = "author";
+
     PostService posts;
+    SearchService search;
+    AuthorService authors;
+    FeedHub liveFeed;
+    ViewService views;
+    NdjsonWriter ndjson;
 
     @Autowired
-    public PostController(PostService posts) {
+    public PostController(
+        PostService posts,
+        SearchService search,
+        AuthorService authors,
+        FeedHub liveFeed,
+        ViewService views,
+        NdjsonWriter ndjson
+    ) {
         this.posts = posts;
+        this.search = search;
+        this.authors = authors;
+        this.liveFeed = liveFeed;
+        this.views = views;
+        this.ndjson = ndjson;
     }
 
     /**
-     * <code>GET /posts</code>
-     * @return <code>200 OK</code> con la lista de posts.
+     * <code>GET /posts?algorithm={name}&after={cursor}&limit={limit}</code>
+     * @param algorithm Orden del feed: <code>chronological</code>,
+     *                  <code>engagement</code> o <code>affinity</code>.
+     * @param after Cursor de la página anterior (<code>next_cursor</code>).
+     * @param limit Número máximo de posts a devolver.
+     * @param expand <code>author</code> para incluir los datos del autor.
+     * @param principal Usuario autenticado, si lo hay.
+     * @return <code>200 OK</code> con la página de posts, <code>400 Bad
+     * Request</code> si el cursor, el algoritmo o <code>expand</code> no son
+     * válidos.
      */
-    // TODO: parámetros para personalizar el algoritmo
-    // TODO: paginación
     @GetMapping
-    public Collection<PostView.PostResponse> getPosts() {
-        return posts.getPosts();
+    public CursorPage<PostView.PostResponse> getPosts(
+        @RequestParam(value = "algorithm", required = false, defaultValue = ChronologicalRanker.NAME)
+        String algorithm,
+
+        @RequestParam(value = "after", required = false)
+        @Nullable
+        String after,
+
+        @RequestParam(value = "limit", required = false, defaultValue = "10")
+        @Min(value = 1, message = "Minimum page size is 1")
+        @Max(value = 100, message = "Maximum page size is 100")
+        int limit,
+
+        @RequestParam(value = "expand", required = false)
+        @Nullable
+        String expand,
+
+        @AuthenticationPrincipal
+        User.@Nullable AuthUser principal
+    ) throws InvalidCursorException, InvalidParameterException {
+        boolean expandAuthor = expandAuthor(expand);
+        ObjectId activeCharacter = principal == null ? null : principal.activeCharacter();
+        CursorPage<PostView.PostResponse> page = posts.getPosts(after, limit, algorithm, activeCharacter);
+        return expandAuthor ? new CursorPage<>(withAuthors(page.page()), page.nextCursor()) : page;
+    }
+
+    /**
+     * <code>GET /posts?format=ndjson&after={cursor}</code>
+     * <br/>
+     * Todos los posts en orden cronológico, un JSON por línea. Se escriben a
+     * medida que se leen de la base de datos, así que sirve para listados
+     * grandes sin cargarlos enteros en memoria.
+     * @param after Cursor desde el que empezar (opcional).
+     * @return <code>200 OK</code> con <code>application/x-ndjson</code>.
+     */
+    @GetMapping(params = NDJSON_FORMAT)
+    public ResponseEntity<StreamingResponseBody> streamPosts(
+        @RequestParam(value = "after", required = false)
+        @Nullable
+        String after
+    ) throws InvalidCursorException {
+        return ndjson.response(posts.streamPosts(after));
+    }
+
+    /**
+     * <code>GET /posts/trending?limit={limit}</code>
+     * @param limit Número máximo de posts a devolver.
+     * @param expand <code>author</code> para incluir los datos del autor.
+     * @param principal Usuario autenticado, si lo hay.
+     * @return <code>200 OK</code> con los posts en tendencia, de mayor a menor.
+     */
+    @GetMapping("trending")
+    public List<PostView.PostResponse> getTrendingPosts(
+        @RequestParam(value = "limit", required = false, defaultValue = "10")
+        @Min(value = 1, message = "Minimum page size is 1")
+        @Max(value = 100, message = "Maximum page size is 100")
+        int limit,
+
+        @RequestParam(value = "expand", required = false)
+        @Nullable
+        String expand,
+
+        @AuthenticationPrincipal
+        User.@Nullable AuthUser principal
+    ) throws InvalidParameterException {
+        boolean expandAuthor = expandAuthor(expand);
+        ObjectId activeCharacter = principal == null ? null : principal.activeCharacter();
+        List<PostView.PostResponse> trending = posts.getTrendingPosts(limit, activeCharacter);
+        return expandAuthor ? withAuthors(trending) : trending;
+    }
+
+    /**
+     * <code>GET /posts/search?q={text}&after={cursor}&limit={limit}</code>
+     * @param text Texto a buscar en los posts y sus comentarios.
+     * @param after Cursor de la página anterior (<code>next_cursor</code>).
+     * @param limit Número máximo de resultados a devolver.
+     * @return <code>200 OK</code> con los resultados, los más relevantes
+     * primero; <code>400 Bad Request</code> si el cursor no es válido.
+     */
+    @GetMapping("search")
+    public CursorPage<SearchHit.SearchHitResponse> search(
+        @RequestParam(value = "q", required = true)
+        @NotBlank(message = "Search text must be not blank")
+        @Size(max = 200, message = "Search text must be at most 200 characters")
+        String text,
+
+        @RequestParam(value = "after", required = false)
+        @Nullable
+        String after,
+
+        @RequestParam(value = "limit", required = false, defaultValue = "10")
+        @Min(value = 1, message = "Minimum page size is 1")
+        @Max(value = 100, message = "Maximum page size is 100")
+        int limit
+    ) throws InvalidCursorException {
+        return search.search(text, after, limit).map(SearchHit.SearchHitResponse::new);
+    }
+
+    /**
+     * <code>GET /posts/stream</code>
+     * <br/>
+     * Feed en directo por <i>Server-Sent Events</i>. Solo recibe lo que ocurre
+     * desde que se conecta: eventos <code>post</code> con cada nuevo post y
+     * eventos <code>counters</code> con los likes y comentarios que se suman
+     * (o restan) a un post. Los clientes demasiado lentos pierden los eventos
+     * más antiguos.
+     * @return <code>200 OK</code> con la conexión abierta.
+     */
+    @GetMapping(value = "stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamFeed() {
+        return liveFeed.subscribe();
     }
 
     /**
@@ -58,7 +218,10 @@ public class PostController {
         var url = MvcUriComponentsBuilder.fromMethodName(
                 PostController.class,
                 "getPost",
-                newId)
+                newId,
+                null,
+                null,
+                null)
             .build()
             .toUri();
 
@@ -68,88 +231,206 @@ public class PostController {
     /**
      * <code>GET /posts/{postid}</code>
      * @param postId Identificador del post.
-     * @return <code>200 OK</code> con el post solicitado, <code>404 Not
-     * found</code> si no existe el ID proporcionado.
+     * @param expand <code>author</code> para incluir los datos del autor.
+     * @param principal Usuario autenticado, si lo hay.
+     * @return <code>200 OK</code> con el post solicitado y su
+     * <code>ETag</code>, <code>304 Not modified</code> si coincide con
+     * <code>If-None-Match</code>, <code>404 Not found</code> si no existe el ID
+     * proporcionado.
      */
     @GetMapping("{postid}")
-    public PostView.PostResponse getPost(
+    public PostView.@Nullable PostResponse getPost(
         @PathVariable("postid")
         @ValidObjectId(message = "Invalid postId to retrieve")
-        ObjectId postId
-    ) throws ResourceNotFoundException {
-        return posts.getPost(postId);
+        ObjectId postId,
+
+        @RequestParam(value = "expand", required = false)
+        @Nullable
+        String expand,
+
+        @AuthenticationPrincipal
+        User.@Nullable AuthUser principal,
+
+        ServletWebRequest request
+    ) throws ResourceNotFoundException, InvalidParameterException {
+        boolean expandAuthor = expandAuthor(expand);
+        ObjectId activeCharacter = principal == null ? null : principal.activeCharacter();
+
+        // Comprobar el ETag antes de leer el post entero. Una respuesta 304
+        // también cuenta como visita
+        String etag = posts.getPostETag(postId, activeCharacter, expandAuthor);
+        views.record(postId, principal == null ? null : principal.username(), request.getRequest());
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        PostView.PostResponse post = posts.getPost(postId, activeCharacter);
+        return expandAuthor ? withAuthors(List.of(post)).getFirst() : post;
     }
 
     /**
      * <code>DELETE /posts/{postid}</code>
+     * <br/>
+     * El post deja de existir inmediatamente, pero sus comentarios y likes se
+     * borran en segundo plano.
      * @param postId Identificador del post.
-     * @return <code>204 No content</code> en éxito, <code>404 Not found</code>
-     * si no existe el ID proporcionado.
+     * @param principal Usuario autenticado, que podrá consultar la tarea.
+     * @return <code>202 Accepted</code> en éxito, con un enlace a la tarea
+     * de borrado en <code>Location</code>; <code>404 Not found</code> si no
+     * existe el ID proporcionado.
      */
     // TODO: errores de permisos
     @DeleteMapping("{postid}")
-    public ResponseEntity<Void> deletePost(
+    public ResponseEntity<Job.JobResponse> deletePost(
         @PathVariable("postid")
         @ValidObjectId(message = "Invalid postId to retrieve")
-        ObjectId postId
+        ObjectId postId,
+
+        @AuthenticationPrincipal
+        User.AuthUser principal
     ) throws ResourceNotFoundException {
-        posts.deletePost(postId);
-        return ResponseEntity.noContent().build();
+        Job job = posts.deletePost(postId, principal.username());
+
+        var url = MvcUriComponentsBuilder.fromMethodName(
+                JobController.class,
+                "getJob",
+                job.id())
+            .build()
+            .toUri();
+
+        return ResponseEntity.accepted().location(url).body(new Job.JobResponse(job));
     }
 
+    /**
+     * <code>POST /posts/{postid}/like?wait={wait}</code>
+     * <br/>
+     * El like se encola y se escribe junto con otros poco después.
+     * @param wait Si es <code>true</code>, no se responde hasta que el like
+     *             se ha escrito en la base de datos.
+     * @return <code>202 Accepted</code> tras encolarlo, o
+     * <code>201 Created</code> si se ha esperado a que se escriba;
+     * <code>404 Not found</code> si no existe el post o el personaje.
+     */
     @PostMapping("{postid}/like")
-    public ResponseEntity<Void> giveLike(
+    public CompletableFuture<ResponseEntity<Void>> giveLike(
         @PathVariable("postid")
         @ValidObjectId(message = "Invalid post id")
         ObjectId postId,
 
+        @RequestParam(value = "wait", required = false, defaultValue = "false")
+        boolean wait,
+
         // TODO: borrar cuando se implemente autenticacion
         @RequestParam(value = "author", required = true)
         @ValidObjectId(message = "Invalid character id author of the like")
         ObjectId characterId
     ) throws ResourceNotFoundException {
-        posts.giveLike(postId, characterId);
+        CompletableFuture<Void> durable = posts.giveLike(postId, characterId);
+        if (!wait) {
+            return CompletableFuture.completedFuture(ResponseEntity.accepted().build());
+        }
 
         var url = MvcUriComponentsBuilder.fromMethodName(
                 PostController.class,
                 "getPost",
-                postId)
+                postId,
+                null,
+                null,
+                null)
             .build()
             .toUri();
 
-        return ResponseEntity.created(url).build();
+        return durable.thenApply(written -> ResponseEntity.created(url).build());
     }
 
+    /**
+     * <code>DELETE /posts/{postid}/like?wait={wait}</code>
+     * <br/>
+     * Igual que al dar un like, el cambio se encola.
+     * @param wait Si es <code>true</code>, no se responde hasta que el cambio
+     *             se ha escrito en la base de datos.
+     * @return <code>202 Accepted</code> tras encolarlo, o
+     * <code>204 No content</code> si se ha esperado a que se escriba;
+     * <code>404 Not found</code> si no existe el post o el personaje.
+     */
     // TODO: error de si el usuario no habia dado like antes
     @DeleteMapping("{postid}/like")
-    public ResponseEntity<Void> removeLike(
+    public CompletableFuture<ResponseEntity<Void>> removeLike(
         @PathVariable("postid")
         @ValidObjectId(message = "Invalid post id")
         ObjectId postId,
 
+        @RequestParam(value = "wait", required = false, defaultValue = "false")
+        boolean wait,
+
         // TODO: borrar cuando se implemente autenticacion
         @RequestParam(value = "author", required = true)
         @ValidObjectId(message = "Invalid character id author of the like")
         ObjectId characterId
     ) throws ResourceNotFoundException {
-        posts.removeLike(postId, characterId);
-        return ResponseEntity.noContent().build();
+        CompletableFuture<Void> durable = posts.removeLike(postId, characterId);
+        if (!wait) {
+            return CompletableFuture.completedFuture(ResponseEntity.accepted().build());
+        }
+        return durable.thenApply(written -> ResponseEntity.noContent().build());
     }
 
     /**
-     * <code>GET /posts/{postid}/comments</code>
+     * <code>GET /posts/{postid}/comments?after={cursor}&limit={limit}</code>
      * @param postId ID del post del que obtener los comentarios.
+     * @param after Cursor de la página anterior (<code>next_cursor</code>).
+     * @param limit Número máximo de comentarios a devolver.
+     * @param expand <code>author</code> para incluir los datos del autor.
      * @return <code>200 OK</code> en éxito, <code>404 Not found</code> si
      * no existe el ID proporcionado.
      */
-    // TODO: paginacion si hay muchos comentarios
     @GetMapping("{postid}/comments")
-    public Collection<Comment.CommentResponse> getCommentsByPost(
+    public CursorPage<Comment.CommentResponse> getCommentsByPost(
+        @PathVariable("postid")
+        @ValidObjectId(message = "Invalid postId to retrieve comments from")
+        ObjectId postId,
+
+        @RequestParam(value = "after", required = false)
+        @Nullable
+        String after,
+
+        @RequestParam(value = "limit", required = false, defaultValue = "10")
+        @Min(value = 1, message = "Minimum page size is 1")
+        @Max(value = 100, message = "Maximum page size is 100")
+        int limit,
+
+        @RequestParam(value = "expand", required = false)
+        @Nullable
+        String expand
+    ) throws ResourceNotFoundException, InvalidCursorException, InvalidParameterException {
+        boolean expandAuthor = expandAuthor(expand);
+        CursorPage<Comment.CommentResponse> page = posts
+            .getCommentsByPost(postId, after, limit)
+            .map(Comment.CommentResponse::new);
+        if (!expandAuthor) {
+            return page;
+        }
+
+        List<Comment.CommentResponse> comments = authors.expand(
+            page.page(),
+            comment -> new ObjectId(comment.author()),
+            Comment.CommentResponse::withAuthorDetails
+        );
+        return new CursorPage<>(comments, page.nextCursor());
+    }
+
+    /**
+     * <code>GET /posts/{postid}/comments?format=ndjson</code>
+     * @param postId ID del post del que obtener los comentarios.
+     * @return <code>200 OK</code> con todos los comentarios, un JSON por línea,
+     * <code>404 Not found</code> si no existe el ID proporcionado.
+     */
+    @GetMapping(value = "{postid}/comments", params = NDJSON_FORMAT)
+    public ResponseEntity<StreamingResponseBody> streamCommentsByPost(
         @PathVariable("postid")
         @ValidObjectId(message = "Invalid postId to retrieve comments from")
         ObjectId postId
     ) throws ResourceNotFoundException {
-        return posts.getCommentsByPost(postId).stream().map(Comment.CommentResponse::new).toList();
+        return ndjson.response(posts.streamCommentsByPost(postId));
     }
 
     /**
@@ -177,13 +458,36 @@ public class PostController {
         ObjectId commentId = posts.createComment(postId, characterId, newComment);
 
         // El enlace es a la lista de comentarios
-        var url = MvcUriComponentsBuilder.fromMethodName(
-                PostController.class,
-                "getCommentsByPost",
-                postId)
-            .build()
+        var url = MvcUriComponentsBuilder.fromController(PostController.class)
+            .path("/{postid}/comments")
+            .buildAndExpand(postId)
             .toUri();
 
         return ResponseEntity.created(url).build();
     }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    /**
+     * @param expand Valor del parámetro <code>expand</code>.
+     * @return Si se deben incluir los datos del autor.
+     * @throws InvalidParameterException Si se pide expandir otro campo.
+     */
+    private static boolean expandAuthor(@Nullable String expand) throws InvalidParameterException {
+        if (expand == null) {
+            return false;
+        }
+        if (!EXPAND_AUTHOR.equals(expand)) {
+            throw new InvalidParameterException("expand", expand);
+        }
+        return true;
+    }
+
+    private List<PostView.PostResponse> withAuthors(List<PostView.PostResponse> posts) {
+        return authors.expand(
+            posts,
+            post -> new ObjectId(post.author()),
+            PostView.PostResponse::withAuthorDetails
+        );
+    }
 }
@@ -0,0 +1,62 @@
+package tavernnet.controller;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import tavernnet.exception.InvalidCursorException;
+import tavernnet.exception.ResourceNotFoundException;
+import tavernnet.model.CursorPage;
+import tavernnet.model.PostView;
+import tavernnet.model.User;
+import tavernnet.service.PostService;
+import tavernnet.utils.ValidObjectId;
+
+@RestController
+@RequestMapping("characters")
+@NullMarked
+public class TimelineController {
+    PostService posts;
+
+    @Autowired
+    public TimelineController(PostService posts) {
+        this.posts = posts;
+    }
+
+    /**
+     * <code>GET /characters/{characterid}/posts?after={cursor}&limit={limit}</code>
+     * @param characterId Identificador del personaje autor.
+     * @param after Cursor de la página anterior (<code>next_cursor</code>).
+     * @param limit Número máximo de posts a devolver.
+     * @param principal Usuario autenticado, si lo hay.
+     * @return <code>200 OK</code> con los posts del personaje, los más
+     * recientes primero; <code>400 Bad Request</code> si el cursor no es
+     * válido y <code>404 Not found</code> si el personaje no existe.
+     */
+    @GetMapping("{characterid}/posts")
+    public CursorPage<PostView.PostResponse> getCharacterPosts(
+        @PathVariable("characterid")
+        @ValidObjectId(message = "Invalid character id")
+        ObjectId characterId,
+
+        @RequestParam(value = "after", required = false)
+        @Nullable
+        String after,
+
+        @RequestParam(value = "limit", required = false, defaultValue = "10")
+        @Min(value = 1, message = "Minimum page size is 1")
+        @Max(value = 100, message = "Maximum page size is 100")
+        int limit,
+
+        @AuthenticationPrincipal
+        User.@Nullable AuthUser principal
+    ) throws ResourceNotFoundException, InvalidCursorException {
+        ObjectId activeCharacter = principal == null ? null : principal.activeCharacter();
+        return posts.getCharacterPosts(characterId, after, limit, activeCharacter);
+    }
+}
@@ -4,17 +4,25 @@ import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.Valid;
+import org.bson.types.ObjectId;
 import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBuilder;
 
+import tavernnet.exception.DeadlineExceededException;
 import tavernnet.exception.DuplicatedResourceException;
+import tavernnet.exception.InvalidParameterException;
 import tavernnet.exception.ResourceNotFoundException;
+import tavernnet.model.Job;
 import tavernnet.model.Pagination;
 import tavernnet.model.User;
+import tavernnet.service.OverviewService;
 import tavernnet.service.UserService;
 
 @RestController
@@ -22,10 +30,12 @@ import tavernnet.service.UserService;
 @NullMarked
 public class UserController {
     private final UserService user;
+    private final OverviewService overviews;
 
     @Autowired
-    public UserController(UserService user) {
+    public UserController(UserService user, OverviewService overviews) {
         this.user = user;
+        this.overviews = overviews;
     }
 
     // Servicio para obtener todos los usuarios.
@@ -43,9 +53,13 @@ public class UserController {
         @RequestParam(value = "count", required = false, defaultValue = "10")
         @Min(value = 5, message = "Minimum page size is 5")
         @Max(value = 1000, message = "Maximum page size is 1000")
-        int pageSize
-    ) {
-        return user.getUsers(searchTerm, pageNumber, pageSize);
+        int pageSize,
+
+        // exact, estimated (cuenta hasta un límite) o cached (recuento reciente)
+        @RequestParam(value = "count_mode", required = false, defaultValue = "cached")
+        String countMode
+    ) throws InvalidParameterException {
+        return user.getUsers(searchTerm, pageNumber, pageSize, Pagination.CountMode.parse(countMode));
     }
 
     // Servicio para crear un nuevo usuario
@@ -58,35 +72,83 @@ public class UserController {
         var url = MvcUriComponentsBuilder.fromMethodName(
                 UserController.class,
                 "getUser",
-                request.username())
+                request.username(),
+                null)
             .build()
             .toUri();
         return ResponseEntity.created(url).build();
     }
 
-    // Servicio para obtener un usuario por ID
+    // Servicio para obtener un usuario por ID. Responde 304 Not modified si
+    // coincide su ETag (If-None-Match), sin leer el usuario ni sus personajes
     @GetMapping("{userid}")
     @PreAuthorize("true")
-    public User.PublicProfile getUser(
-        @PathVariable("userid") @NotBlank String id
+    public User.@Nullable PublicProfile getUser(
+        @PathVariable("userid") @NotBlank String id,
+        WebRequest request
     ) throws ResourceNotFoundException {
+        if (request.checkNotModified(user.getUserETag(id))) {
+            return null;
+        }
         return user.getUser(id);
     }
 
+    /**
+     * <code>GET /users/{userid}/overview?posts={posts}</code>
+     * @param username Identificador del usuario.
+     * @param postsPerCharacter Número de posts más recientes de cada personaje.
+     * @param principal Usuario autenticado, si lo hay.
+     * @return <code>200 OK</code> con el perfil, los posts de cada personaje y
+     * las parties del usuario; <code>404 Not found</code> si no existe y
+     * <code>504 Gateway timeout</code> si no se obtiene todo a tiempo.
+     */
+    @GetMapping("{userid}/overview")
+    @PreAuthorize("true")
+    public User.Overview getOverview(
+        @PathVariable("userid")
+        @NotBlank(message = "Missing username to retrieve")
+        String username,
+
+        @RequestParam(value = "posts", required = false, defaultValue = "5")
+        @Min(value = 1, message = "Minimum posts per character is 1")
+        @Max(value = 20, message = "Maximum posts per character is 20")
+        int postsPerCharacter,
+
+        @AuthenticationPrincipal
+        User.@Nullable AuthUser principal
+    ) throws ResourceNotFoundException, DeadlineExceededException {
+        ObjectId activeCharacter = principal == null ? null : principal.activeCharacter();
+        return overviews.getOverview(username, postsPerCharacter, activeCharacter);
+    }
+
     /**
      * <code>DELETE /users/{userid}</code>
      * @param username Identificador del usuario.
-     * @return <code>204 No content</code> en éxito, <code>404 Not found</code>
-     * si no existe el ID proporcionado.
+     * @param principal Usuario autenticado, que podrá consultar la tarea.
+     * @return <code>204 No content</code> en éxito, con un enlace en
+     * <code>Location</code> a la tarea que borra sus personajes, posts,
+     * comentarios y likes; <code>404 Not found</code> si no existe el ID
+     * proporcionado.
      */
     @DeleteMapping("{userid}")
     @PreAuthorize("hasRole('ADMIN') or @auth.isUserOwner('users', #username, principal)")
     public ResponseEntity<Void> deleteUser(
         @PathVariable("userid")
         @NotBlank(message = "Missing username to retrieve")
-        String username
+        String username,
+
+        @AuthenticationPrincipal
+        User.AuthUser principal
     ) throws ResourceNotFoundException {
-        user.deleteUser(username);
-        return ResponseEntity.noContent().build();
+        Job job = user.deleteUser(username, principal.username());
+
+        var url = MvcUriComponentsBuilder.fromMethodName(
+                JobController.class,
+                "getJob",
+                job.id())
+            .build()
+            .toUri();
+
+        return ResponseEntity.noContent().location(url).build();
     }
 }
@@ -0,0 +1,7 @@
+package tavernnet.exception;
+
+public class DeadlineExceededException extends Exception {
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
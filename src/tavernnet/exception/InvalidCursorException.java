@@ -0,0 +1,15 @@
+package tavernnet.exception;
+
+public class InvalidCursorException extends Exception {
+    // Cursor recibido del cliente
+    private final String cursor;
+
+    public InvalidCursorException(String cursor) {
+        super("Invalid pagination cursor: \"%s\"".formatted(cursor));
+        this.cursor = cursor;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+}
@@ -0,0 +1,23 @@
+package tavernnet.exception;
+
+public class InvalidParameterException extends Exception {
+    // Nombre del parámetro de la petición
+    private final String parameter;
+
+    // Valor recibido
+    private final String value;
+
+    public InvalidParameterException(String parameter, String value) {
+        super("Invalid value '%s' for parameter '%s'".formatted(value, parameter));
+        this.parameter = parameter;
+        this.value = value;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -6,6 +6,7 @@ import org.bson.types.ObjectId;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 import tavernnet.utils.patch.JsonPatchOperation;
 import tavernnet.utils.patch.exceptions.JsonPatchFailedException;
@@ -30,7 +31,9 @@ public record Character(
     @Valid Stats modifiers,
     @Valid CombatStats combat,
     @Valid PassiveStats passive,
-    Collection<@Valid Action> actions
+    Collection<@Valid Action> actions,
+    // Se incrementa con cada modificación del documento, para los ETag
+    @Version @Nullable Long version
 ) implements Ownable {
 
     public static Character defaultCharacter(
@@ -54,7 +57,8 @@ public record Character(
             Stats.defaultModifiers(),
             CombatStats.defaultStats(),
             PassiveStats.defaultStats(),
-            Action.defaultActions()
+            Action.defaultActions(),
+            null
         );
     }
 
@@ -72,7 +76,8 @@ public record Character(
             request.general == null? Stats.defaultModifiers() : Stats.asModifiers(request.general),
             request.combat == null? CombatStats.defaultStats() : request.combat,
             request.passive == null? PassiveStats.defaultStats() : request.passive,
-            request.actions
+            request.actions,
+            null // lo asigna la DB al insertar
         );
     }
 
@@ -87,8 +92,8 @@ public record Character(
         }
 
         switch (op.path().toString()) {
-            case "/id", "/creation", "/user" -> throw new JsonPatchFailedException(
-                "Changing ID, user or creation date is forbidden"
+            case "/id", "/creation", "/user", "/version" -> throw new JsonPatchFailedException(
+                "Changing ID, user, creation date or version is forbidden"
             );
         }
     }
@@ -199,6 +204,21 @@ public record Character(
         @NotNull Collection<@Valid Action> actions
     ) {}
 
+    /**
+     * Datos mínimos del autor de un post o comentario, para mostrarlos junto a
+     * él (<code>?expand=author</code>).
+     */
+    public record AuthorSummary (
+        @NotBlank String id,
+        @NotBlank String name,
+        @NotBlank String user,
+        @NotBlank String race
+    ) {
+        public AuthorSummary(Character character) {
+            this(character.id.toHexString(), character.name, character.user, character.race);
+        }
+    }
+
     public record PublicCharacter (
         @NotBlank String id,
         @NotBlank @Size(max = 50, message = "Character name too long") String name,
@@ -1,14 +1,17 @@
 package tavernnet.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import org.bson.types.ObjectId;
+import org.jspecify.annotations.Nullable;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 import tavernnet.utils.ValidObjectId;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Representa un comentario sobre un post en concreto
@@ -56,7 +59,11 @@ public record Comment(
         String author,
 
         @NotNull(message = "Comment date must be not null")
-        LocalDateTime date
+        LocalDateTime date,
+
+        // Datos del personaje autor, solo con ?expand=author
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Character.@Nullable AuthorSummary authorDetails
     ) {
         public CommentResponse(Comment comment) {
             this(
@@ -64,11 +71,26 @@ public record Comment(
                 comment.content(),
                 comment.post().toHexString(),
                 comment.author().toHexString(),
-                comment.date()
+                comment.date(),
+                null
             );
         }
+
+        public CommentResponse withAuthorDetails(Character.@Nullable AuthorSummary authorDetails) {
+            return new CommentResponse(id, content, post, author, date, authorDetails);
+        }
     }
 
+    /**
+     * Resultado de buscar un post junto con una página de sus comentarios. Si
+     * el post no existe, no se obtiene ningún resultado.
+     */
+    public record PostComments(
+        @Id
+        ObjectId id,
+        List<Comment> comments
+    ) {}
+
     public Comment(
         @ValidObjectId ObjectId postId,
         @ValidObjectId ObjectId characterId,
@@ -0,0 +1,45 @@
+package tavernnet.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página de resultados con paginación por cursor (<i>keyset</i>). En lugar de
+ * un número de página, se devuelve un cursor opaco que el cliente envía para
+ * obtener la siguiente. Si es <code>null</code>, no hay más resultados.
+ */
+@NullMarked
+public record CursorPage<T> (
+    List<T> page,
+
+    @JsonProperty("next_cursor")
+    @Nullable
+    String nextCursor
+) {
+    /**
+     * @param items Resultados de la consulta, pidiendo <code>limit + 1</code>
+     *              elementos para saber si hay una página siguiente.
+     * @param limit Tamaño de la página.
+     * @param cursorOf Obtiene el cursor que apunta justo después del elemento.
+     */
+    public static <T> CursorPage<T> of(
+        List<T> items,
+        int limit,
+        Function<T, String> cursorOf
+    ) {
+        if (items.size() <= limit) {
+            return new CursorPage<>(items, null);
+        }
+
+        List<T> page = items.subList(0, limit);
+        return new CursorPage<>(page, cursorOf.apply(page.getLast()));
+    }
+
+    public <R> CursorPage<R> map(Function<T, R> mapper) {
+        return new CursorPage<>(page.stream().map(mapper).toList(), nextCursor);
+    }
+}
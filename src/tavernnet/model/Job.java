@@ -0,0 +1,113 @@
+package tavernnet.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.Nullable;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tarea en segundo plano guardada en la base de datos, para que no se pierda
+ * si el servidor se cae. Mientras se ejecuta, el trabajador que la ha tomado
+ * renueva su <code>lease_until</code>; si deja de hacerlo, otro trabajador la
+ * vuelve a tomar.
+ */
+@Document(collection = "jobs")
+public record Job(
+    @Id
+    ObjectId id,
+
+    Type type,
+
+    // Recurso sobre el que se aplica la tarea (p. ej. el ID del post borrado)
+    String target,
+
+    // Usuario que la ha pedido: solo él y los administradores pueden
+    // consultarla. Las tareas anteriores no lo tienen
+    @Nullable
+    String submitter,
+
+    Status status,
+
+    // Número de elementos procesados, por tipo
+    Map<String, Long> progress,
+
+    // Personajes ya borrados por una USER_CASCADE, y cuándo se borró el
+    // último: lo que otras instancias acepten de ellos después se barre
+    // pasado jobs.sweep-after
+    @Field("purged_characters")
+    @Nullable
+    List<ObjectId> purgedCharacters,
+
+    @Field("purged_at")
+    @Nullable
+    LocalDateTime purgedAt,
+
+    // Número de veces que se ha empezado a ejecutar
+    int attempts,
+
+    @Field("lease_until")
+    @Nullable
+    LocalDateTime leaseUntil,
+
+    // Último error, si lo hay
+    @Nullable
+    String error,
+
+    @Field("created_at")
+    LocalDateTime createdAt,
+
+    @Field("updated_at")
+    LocalDateTime updatedAt
+) {
+    public enum Type {
+        // Borrar los comentarios y likes de un post ya borrado
+        POST_CASCADE,
+        // Borrar los personajes de un usuario ya borrado, con sus posts,
+        // comentarios y likes
+        USER_CASCADE,
+    }
+
+    public enum Status {
+        PENDING,
+        RUNNING,
+        DONE,
+        FAILED,
+    }
+
+    /** DTO para consultar el estado de una tarea */
+    public record JobResponse(
+        String id,
+        Type type,
+        String target,
+        Status status,
+        Map<String, Long> progress,
+        int attempts,
+        @Nullable String error,
+
+        @JsonProperty("created_at")
+        LocalDateTime createdAt,
+
+        @JsonProperty("updated_at")
+        LocalDateTime updatedAt
+    ) {
+        public JobResponse(Job job) {
+            this(
+                job.id.toHexString(),
+                job.type,
+                job.target,
+                job.status,
+                job.progress,
+                job.attempts,
+                job.error,
+                job.createdAt,
+                job.updatedAt
+            );
+        }
+    }
+}
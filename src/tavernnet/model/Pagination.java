@@ -1,13 +1,10 @@
 package tavernnet.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import org.bson.Document;
 import org.jspecify.annotations.NullMarked;
-import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import tavernnet.exception.InvalidParameterException;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 @NullMarked
 public record Pagination<T> (
@@ -17,31 +14,29 @@ public record Pagination<T> (
     int pageNumber,
 
     @JsonProperty("total_count")
-    int totalCount
+    int totalCount,
+
+    // Cómo se ha obtenido total_count
+    @JsonProperty("count_mode")
+    CountMode countMode
 ) {
-    public static Pagination<String> from(AggregationResults<Document> root, int pageNumber) {
-        var realRoot = root.getMappedResults().getFirst();
-        int count = 0;
-        if (
-            realRoot.get("total_count") instanceof List<?> list
-            && !list.isEmpty()
-            && list.getFirst() instanceof Map<?, ?> map
-            && map.get("count") instanceof Integer c
-        ) {
-            count = c;
-        }
+    /** Formas de calcular el número total de resultados */
+    public enum CountMode {
+        // Contando todos los resultados
+        @JsonProperty("exact") EXACT,
+        // Contando como mucho hasta un límite: si lo alcanza, es ese límite
+        @JsonProperty("estimated") ESTIMATED,
+        // El último recuento exacto de la misma búsqueda, de hace poco
+        @JsonProperty("cached") CACHED;
 
-        // Esto está bien, como mucho procesamos el límite maximo de elementos
-        // permitidos por página, que es 1000.
-        List<String> page = new ArrayList<>();
-        if (realRoot.get("page_data") instanceof List<?> pageData) {
-            for (Object obj : pageData) {
-                if (obj instanceof Map<?, ?> map && map.get("_id") instanceof String username) {
-                    page.add(username);
+        /** @throws InvalidParameterException Si no es un modo válido. */
+        public static CountMode parse(String mode) throws InvalidParameterException {
+            for (CountMode value : values()) {
+                if (value.name().equalsIgnoreCase(mode)) {
+                    return value;
                 }
             }
+            throw new InvalidParameterException("count_mode", mode);
         }
-
-        return new Pagination<>(page, pageNumber, count);
     }
 }
@@ -1,6 +1,7 @@
 package tavernnet.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Collection;
@@ -13,6 +14,10 @@ public class Party {
     private Collection<Character> characters;
     private User DM;
 
+    // Se incrementa con cada modificación del documento, para los ETag
+    @Version
+    private Long version;
+
     public Party(String name, Collection<Character> characters, User DM) {
         this.name = name;
         this.characters = characters;
@@ -38,4 +43,8 @@ public class Party {
     public void setDM(User DM) {
         this.DM = DM;
     }
+
+    public Long getVersion() {
+        return version;
+    }
 }
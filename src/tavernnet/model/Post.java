@@ -1,11 +1,14 @@
 package tavernnet.model;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
 import tavernnet.utils.ValidObjectId;
 
 import java.time.LocalDateTime;
@@ -40,6 +43,26 @@ public class Post implements Ownable {
     @NotNull(message = "Date must be not null")
     private final LocalDateTime date;
 
+    // Contadores materializados: no se calculan al leer, sino que se
+    // actualizan con $inc cada vez que se da/quita un like o se comenta.
+    @Field("n_likes")
+    @Min(value = 0, message = "Likes must be a positive number")
+    private int nLikes = 0;
+
+    @Field("n_comments")
+    @Min(value = 0, message = "Comments must be a positive number")
+    private int nComments = 0;
+
+    // Visitantes únicos, copiados periódicamente de Redis (ver ViewService)
+    @Field("n_views")
+    @Min(value = 0, message = "Views must be a positive number")
+    private long nViews = 0;
+
+    // Se incrementa con cada modificación del documento (salvo los contadores)
+    // y sirve para calcular su ETag
+    @Version
+    private Long version;
+
     public Post(ObjectId id, ObjectId author, String title, String content, LocalDateTime date) {
         this.id = id;
         this.author = author;
@@ -82,4 +105,20 @@ public class Post implements Ownable {
     public LocalDateTime getDate() {
         return date;
     }
+
+    public int getNLikes() {
+        return nLikes;
+    }
+
+    public int getNComments() {
+        return nComments;
+    }
+
+    public long getNViews() {
+        return nViews;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
 }
@@ -1,10 +1,12 @@
 package tavernnet.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import org.bson.types.ObjectId;
+import org.jspecify.annotations.Nullable;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -14,10 +16,11 @@ import java.time.LocalDateTime;
 
 /**
  * Representa una publicación creada por un personaje determinado. Esta versión
- * incluye el número de likes y comentarios, lo que significa que está basada en
- * la vista.
+ * incluye el número de likes y comentarios, que se guardan como contadores en
+ * el propio documento del post (ver {@link Post}), por lo que leerla es un
+ * único acceso por <code>_id</code>.
  */
-@Document(collection = "posts_view")
+@Document(collection = "posts")
 public record PostView (
     @Id
     @ValidObjectId(message = "Invalid post id")
@@ -29,8 +32,6 @@ public record PostView (
     @NotBlank(message = "Content must be not null or blank")
     String content,
 
-    // TODO: liked by current user (extraer de la sesion)
-
     @ValidObjectId(message = "Invalid author character id")
     ObjectId author,
 
@@ -43,7 +44,11 @@ public record PostView (
 
     @Field("n_comments")
     @Min(value = 0, message = "Comments must be a positive number")
-    int nComments
+    int nComments,
+
+    @Field("n_views")
+    @Min(value = 0, message = "Views must be a positive number")
+    long nViews
 ) implements Ownable {
     /** DTO para devolver datos de un post */
     public record PostResponse(
@@ -59,8 +64,6 @@ public record PostView (
         @NotBlank(message = "Content must be not null or blank")
         String content,
 
-        // TODO: liked by current user (extraer de la sesion)
-
         @NotNull(message = "Date must be not null")
         LocalDateTime date,
 
@@ -68,7 +71,20 @@ public record PostView (
         int nLikes,
 
         @Min(value = 0, message = "Comments must be a positive number")
-        int nComments
+        int nComments,
+
+        @Min(value = 0, message = "Views must be a positive number")
+        long nViews,
+
+        // Si el personaje activo ha dado like al post. Se omite si no hay
+        // usuario autenticado
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        @Nullable
+        Boolean likedByMe,
+
+        // Datos del personaje autor, solo con ?expand=author
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Character.@Nullable AuthorSummary authorDetails
     ) {
         public PostResponse(@Valid PostView post) {
             this(
@@ -78,9 +94,30 @@ public record PostView (
                 post.content(),
                 post.date(),
                 post.nLikes(),
-                post.nComments()
+                post.nComments(),
+                post.nViews(),
+                null,
+                null
             );
         }
+
+        public PostResponse withLikedByMe(boolean likedByMe) {
+            return new PostResponse(id, title, author, content, date, nLikes, nComments, nViews, likedByMe, authorDetails);
+        }
+
+        public PostResponse withAuthorDetails(Character.@Nullable AuthorSummary authorDetails) {
+            return new PostResponse(id, title, author, content, date, nLikes, nComments, nViews, likedByMe, authorDetails);
+        }
+    }
+
+    /** Copia del post con otros valores de los contadores */
+    public PostView withCounters(int nLikes, int nComments) {
+        return new PostView(id, title, content, author, date, nLikes, nComments, nViews);
+    }
+
+    /** Copia del post con los contadores de otra lectura del mismo */
+    public PostView withCountersOf(PostView other) {
+        return new PostView(id, title, content, author, date, other.nLikes, other.nComments, other.nViews);
     }
 
     @Override
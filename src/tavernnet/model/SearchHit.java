@@ -0,0 +1,62 @@
+package tavernnet.model;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.Nullable;
+import org.springframework.data.annotation.Id;
+
+import java.time.LocalDateTime;
+
+/**
+ * Resultado de una búsqueda de texto: un post o un comentario, junto con su
+ * relevancia según el índice de texto de MongoDB.
+ */
+public record SearchHit(
+    @Id
+    ObjectId id,
+
+    // "post" o "comment"
+    String type,
+
+    // Post encontrado, o post al que pertenece el comentario encontrado
+    ObjectId post,
+
+    ObjectId author,
+
+    // Solo en los posts
+    @Nullable
+    String title,
+
+    String content,
+
+    LocalDateTime date,
+
+    double score
+) {
+    public static final String POST = "post";
+    public static final String COMMENT = "comment";
+
+    /** DTO para devolver un resultado de búsqueda */
+    public record SearchHitResponse(
+        String type,
+        String id,
+        String post,
+        String author,
+        @Nullable String title,
+        String content,
+        LocalDateTime date,
+        double score
+    ) {
+        public SearchHitResponse(SearchHit hit) {
+            this(
+                hit.type,
+                hit.id.toHexString(),
+                hit.post.toHexString(),
+                hit.author.toHexString(),
+                hit.title,
+                hit.content,
+                hit.date,
+                hit.score
+            );
+        }
+    }
+}
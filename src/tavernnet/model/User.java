@@ -7,6 +7,7 @@ import org.bson.types.ObjectId;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -19,6 +20,8 @@ import tavernnet.utils.ValidObjectId;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 @NullMarked
@@ -77,6 +80,16 @@ public class User implements UserDetails, Ownable {
         }
     }
 
+    /** DTO de respuesta de <code>GET /users/{userid}/overview</code> */
+    public record Overview(
+        @JsonProperty("user")
+        PublicProfile profile,
+        // Posts más recientes de cada personaje, por ID del personaje
+        Map<String, List<PostView.PostResponse>> posts,
+        // Nombres de las parties en las que participa
+        List<String> parties
+    ) {}
+
     // ==== DTOs: LOGIN ========================================================
 
     /** DTO de lo que envia el usuario cuando quiere iniciar sesion  */
@@ -141,6 +154,10 @@ public class User implements UserDetails, Ownable {
     private final GlobalRole role;
     private final LocalDateTime creation;
 
+    // Se incrementa con cada modificación del documento, para los ETag
+    @Version
+    private @Nullable Long version;
+
     public User(String username, String passwordHash, GlobalRole role, LocalDateTime creation) {
         this.username = username;
         this.passwordHash = passwordHash;
@@ -182,4 +199,8 @@ public class User implements UserDetails, Ownable {
     public GlobalRole getRole() {
         return role;
     }
+
+    public @Nullable Long getVersion() {
+        return version;
+    }
 }
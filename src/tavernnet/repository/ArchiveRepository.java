@@ -0,0 +1,118 @@
+package tavernnet.repository;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+import tavernnet.model.User;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Lectura y escritura en bloque de los documentos de posts, comentarios y
+ * likes tal cual están guardados, sin pasar por las clases del modelo, para
+ * exportarlos e importarlos. También la inserción en bloque de usuarios.
+ */
+@Repository
+@NullMarked
+public class ArchiveRepository {
+    private static final int STREAM_BATCH_SIZE = 1000;
+
+    /** Colecciones que se exportan, en el orden en que se deben importar */
+    public enum Kind {
+        POST("posts"),
+        COMMENT("comments"),
+        LIKE("likes");
+
+        private final String collection;
+
+        Kind(String collection) {
+            this.collection = collection;
+        }
+
+        public String collection() {
+            return collection;
+        }
+    }
+
+    private final MongoTemplate mongo;
+
+    @Autowired
+    public ArchiveRepository(MongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    /**
+     * Todos los documentos de la colección, leídos del cursor en lotes. Se
+     * debe cerrar el stream tras usarlo.
+     */
+    public Stream<Document> streamAll(Kind kind) {
+        Query query = new Query()
+            .with(Sort.by("_id"))
+            .cursorBatchSize(STREAM_BATCH_SIZE);
+        return mongo.stream(query, Document.class, kind.collection());
+    }
+
+    /**
+     * Inserta los documentos en orden con un único <code>insertMany</code>.
+     * Si uno falla (p. ej. por un <code>_id</code> duplicado), los anteriores
+     * quedan insertados y los siguientes no.
+     * @throws com.mongodb.MongoBulkWriteException Si algún documento falla.
+     */
+    public void insertAll(Kind kind, List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        mongo.getCollection(kind.collection())
+            .insertMany(documents, new InsertManyOptions().ordered(true));
+    }
+
+    /**
+     * Inserta los usuarios sin orden con un único <code>insertMany</code>: si
+     * uno falla, el resto se insertan igualmente.
+     * @return Posición en la lista de los que no se han insertado porque ya
+     * existía un usuario con el mismo nombre.
+     * @throws com.mongodb.MongoBulkWriteException Si alguno falla por otro
+     * motivo.
+     */
+    public Set<Integer> insertUsers(List<User> users) {
+        if (users.isEmpty()) {
+            return Set.of();
+        }
+
+        List<Document> documents = new ArrayList<>(users.size());
+        for (User user : users) {
+            Document document = new Document();
+            mongo.getConverter().write(user, document);
+            // Como al insertar con save(), para que después se pueda modificar
+            document.putIfAbsent("version", 0L);
+            documents.add(document);
+        }
+
+        try {
+            mongo.getCollection(mongo.getCollectionName(User.class))
+                .insertMany(documents, new InsertManyOptions().ordered(false));
+            return Set.of();
+        } catch (MongoBulkWriteException e) {
+            Set<Integer> duplicated = new HashSet<>();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+                duplicated.add(error.getIndex());
+            }
+            return duplicated;
+        }
+    }
+}
@@ -7,13 +7,16 @@ import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 import tavernnet.model.Character;
 
 @Repository
 @NullMarked
 public interface CharacterRepository extends MongoRepository<Character, ObjectId> {
-    @Query("{ 'user': ?0 }")
+    // En orden de ID, del que depende el ETag del perfil
+    @Query(value = "{ 'user': ?0 }", sort = "{ '_id': 1 }")
     Collection<Character> getCharactersByUser(String username);
 
     @Query(value = "{ 'user': ?0, 'name': ?1 }", exists = true)
@@ -22,6 +25,14 @@ public interface CharacterRepository extends MongoRepository<Character, ObjectId
     @Query("{ 'user': ?0, 'name': ?1 }")
     Character getCharacterByName(String username, String characterName);
 
+    // Solo el ID y la versión del personaje, para calcular su ETag
+    @Query(value = "{ 'user': ?0, 'name': ?1 }", fields = "{ 'version': 1 }")
+    Optional<Character> getVersionByName(String username, String characterName);
+
+    /** Solo los datos que se muestran junto a un post o comentario */
+    @Query(value = "{ '_id': { $in: ?0 } }", fields = "{ 'name': 1, 'user': 1, 'race': 1 }")
+    List<Character> getSummariesById(Collection<ObjectId> ids);
+
     /**
      * @param characterid Id del personaje del que obtener los datos.
      * @return Character que tiene el ID dado.
@@ -3,31 +3,93 @@ package tavernnet.repository;
 import jakarta.validation.constraints.NotNull;
 import org.bson.types.ObjectId;
 import org.jspecify.annotations.NullMarked;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Aggregation;
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
-import java.util.Collection;
-import java.util.Optional;
+import java.util.List;
+import java.util.stream.Stream;
 
 import tavernnet.model.Comment;
+import tavernnet.model.SearchHit;
 
 @Repository
 @NullMarked
 public interface CommentsRepository extends MongoRepository<Comment, ObjectId> {
+    // NOTA: las páginas de comentarios de un post se obtienen desde
+    // PostsRepository, junto con la comprobación de que el post existe
+
     /**
-     * Obtiene todos los comentarios de un post concreto.
+     * Todos los comentarios de un post, del más antiguo al más reciente. Se
+     * leen del cursor en lotes, por lo que el stream se debe cerrar.
      * @param postId ID del post al que pertenecen los comentarios.
      */
-    @Query("{ '_id.post': ?0 }")
-    Optional<Collection<Comment>> getCommentsByPost(ObjectId postId);
+    @Meta(cursorBatchSize = PostsViewRepository.STREAM_BATCH_SIZE)
+    @Query(value = "{ 'post': ?0 }", sort = "{ 'date': 1, '_id': 1 }")
+    Stream<Comment> streamCommentsByPost(ObjectId postId);
 
-    @Query(value = "{ 'id_post': ?0 }", delete = true)
-    void deleteByPostId(ObjectId postId);
+    /**
+     * Últimos comentarios de un personaje. Solo se lee el post comentado.
+     * @param authorId ID del personaje autor de los comentarios.
+     * @param limit Número máximo de comentarios (solo se usa la página 0).
+     */
+    @Query(value = "{ 'author': ?0 }", fields = "{ 'post': 1 }", sort = "{ '_id': -1 }")
+    List<Comment> findRecentByAuthor(ObjectId authorId, Pageable limit);
 
     /**
      * @param comment Guarda el nuevo comentario en la base de datos.
      * @return Devuelve el objeto que se almacenó en la base de datos.
      */
     <S extends @NotNull Comment> S save(S comment);
+
+    // ==== BÚSQUEDA ===========================================================
+
+    // Búsqueda sobre el índice de texto { content }, igual que la de posts
+    // (ver PostsViewRepository)
+
+    /** Primera página de comentarios que contienen el texto buscado */
+    @Aggregation(pipeline = {
+        "{ $match: { $text: { $search: ?0 } } }",
+        """
+        {
+            $project: {
+                'type': { $literal: 'comment' },
+                'post': 1,
+                'author': 1,
+                'title': { $literal: null },
+                'content': 1,
+                'date': 1,
+                'score': { $meta: 'textScore' }
+            }
+        }
+        """,
+        "{ $sort: { 'score': -1, '_id': -1 } }",
+        "{ $limit: ?1 }"
+    })
+    List<SearchHit> search(String text, int limit);
+
+    /** Siguientes páginas: comentarios menos relevantes que la posición dada */
+    @Aggregation(pipeline = {
+        "{ $match: { $text: { $search: ?0 } } }",
+        """
+        {
+            $project: {
+                'type': { $literal: 'comment' },
+                'post': 1,
+                'author': 1,
+                'title': { $literal: null },
+                'content': 1,
+                'date': 1,
+                'score': { $meta: 'textScore' }
+            }
+        }
+        """,
+        "{ $match: { $or: [ { 'score': { $lt: ?1 } }, { 'score': ?1, '_id': { $lt: ?2 } } ] } }",
+        "{ $sort: { 'score': -1, '_id': -1 } }",
+        "{ $limit: ?3 }"
+    })
+    List<SearchHit> searchAfter(String text, double score, ObjectId id, int limit);
 }
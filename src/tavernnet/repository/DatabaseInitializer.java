@@ -9,6 +9,10 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 import tavernnet.model.*;
@@ -44,13 +48,19 @@ public class DatabaseInitializer implements CommandLineRunner {
             var collections = mongo.getCollectionNames();
             if (!collections.isEmpty()) {
                 log.info("Available collections: {}", mongo.getCollectionNames());
+                if (collections.contains("posts_view")) {
+                    migratePostsView();
+                }
+                migrateVersions();
+                // Crear un índice que ya existe no hace nada, así se añaden los
+                // nuevos índices a bases de datos creadas con versiones previas
+                createIndices();
                 return;
             }
 
             log.debug("Database appears to be empty, creating default collections...");
             createDefaultData();
             createIndices();
-            createViews();
         } catch (Exception e) {
             log.error("Error checking MongoDB connection: {}", e.getMessage(), e);
         }
@@ -104,7 +114,8 @@ public class DatabaseInitializer implements CommandLineRunner {
             Character.Stats.asModifiers(eltonStats),
             new Character.CombatStats(14, 32, 40, +3),
             new Character.PassiveStats(15),
-            Character.Action.defaultActions()
+            Character.Action.defaultActions(),
+            null
         );
 
         mongo.insert(zarion);
@@ -144,6 +155,11 @@ public class DatabaseInitializer implements CommandLineRunner {
         );
 
         mongo.insert(comment);
+        mongo.updateFirst(
+            new Query(Criteria.where("_id").is(postId1)),
+            new Update().inc("n_comments", 1),
+            Post.class
+        );
         log.info("Created comment: {}", comment);
 
         likesRepo.addLike(postId1, eltonId);
@@ -167,32 +183,117 @@ public class DatabaseInitializer implements CommandLineRunner {
             .unique()
         );
         log.info("Created likes index");
+
+        // Feed paginado por cursor: los posts más recientes primero, usando el
+        // _id para desempatar entre posts con la misma fecha
+        mongo.indexOps("posts").createIndex(new Index()
+            .on("date", Sort.Direction.DESC)
+            .on("_id", Sort.Direction.DESC)
+        );
+        log.info("Created posts feed index");
+
+        // Posts de un personaje paginados por cursor, igual que el feed
+        mongo.indexOps("posts").createIndex(new Index()
+            .on("author", Sort.Direction.ASC)
+            .on("date", Sort.Direction.DESC)
+            .on("_id", Sort.Direction.DESC)
+        );
+        log.info("Created posts author index");
+
+        // Comentarios de un post paginados por cursor, los más antiguos primero
+        mongo.indexOps("comments").createIndex(new Index()
+            .on("post", Sort.Direction.ASC)
+            .on("date", Sort.Direction.ASC)
+            .on("_id", Sort.Direction.ASC)
+        );
+        log.info("Created comments thread index");
+
+        // Búsqueda de texto. El título pesa más que el contenido
+        mongo.indexOps("posts").createIndex(new TextIndexDefinition.TextIndexDefinitionBuilder()
+            .onField("title", 3F)
+            .onField("content")
+            .withDefaultLanguage("spanish")
+            .build()
+        );
+        mongo.indexOps("comments").createIndex(new TextIndexDefinition.TextIndexDefinitionBuilder()
+            .onField("content")
+            .withDefaultLanguage("spanish")
+            .build()
+        );
+        log.info("Created text search indices");
+
+        // Parties de un usuario, como DM o con alguno de sus personajes
+        mongo.indexOps("parties").createIndex(new Index().on("DM._id", Sort.Direction.ASC));
+        mongo.indexOps("parties").createIndex(new Index().on("characters.user", Sort.Direction.ASC));
+        log.info("Created parties member indices");
+
+        // Tareas pendientes, las más antiguas primero
+        mongo.indexOps("jobs").createIndex(new Index()
+            .on("status", Sort.Direction.ASC)
+            .on("created_at", Sort.Direction.ASC)
+        );
+        // Tareas sin terminar sobre un recurso (p. ej. un usuario borrado)
+        mongo.indexOps("jobs").createIndex(new Index()
+            .on("type", Sort.Direction.ASC)
+            .on("target", Sort.Direction.ASC)
+        );
+        log.info("Created jobs indices");
+
+        // Candidatos del feed ordenado por interacciones
+        mongo.indexOps("posts").createIndex(new Index()
+            .on("n_likes", Sort.Direction.DESC)
+            .on("n_comments", Sort.Direction.DESC)
+        );
+        log.info("Created posts engagement index");
+
+        // Interacciones recientes de un personaje (feed por afinidad)
+        mongo.indexOps("likes").createIndex(new Index()
+            .on("author", Sort.Direction.ASC)
+            .on("_id", Sort.Direction.DESC)
+        );
+        mongo.indexOps("comments").createIndex(new Index()
+            .on("author", Sort.Direction.ASC)
+            .on("_id", Sort.Direction.DESC)
+        );
+        log.info("Created likes and comments author indices");
+    }
+
+    private void migrateVersions() {
+        // Los documentos creados antes de añadir @Version no tienen versión, y
+        // Spring Data los trataría como nuevos al guardarlos
+        for (String collection : new String[]{"posts", "users", "characters", "parties"}) {
+            long updated = mongo.updateMulti(
+                new Query(Criteria.where("version").exists(false)),
+                new Update().set("version", 0L),
+                collection
+            ).getModifiedCount();
+            if (updated > 0) {
+                log.info("Added version to {} documents of \"{}\"", updated, collection);
+            }
+        }
     }
 
-    private void createViews() {
-        // Crear una vista para comprobar fácilmente el número de comentarios y likes
-        //
-        // NOTAS SOBRE RENDIMIENTO
-        // Crea una vista que se traducirá en consultas (no es materializada), por lo
-        // que no es lo mejor cuando hay muchas consultas y documentos. Pero como esto
-        // no es el objetivo de la práctica, así está lo suficientemente bien.
-        //
-        // Por otro lado, estas vistas son solo de lectura: no se pueden escribir en
+    private void migratePostsView() {
+        // Las versiones anteriores usaban una vista "posts_view" que calculaba
+        // el número de likes y comentarios con dos $lookup en cada lectura.
+        // Ahora son contadores guardados en el propio post, así que se calculan
+        // una única vez con la misma agregación y se elimina la vista.
         mongo.getDb().runCommand(Document.parse("""
             {
-                create: "posts_view",
-                viewOn: "posts",
+                aggregate: "posts",
                 pipeline: [
                     { $lookup: { from: "likes", localField: "_id", foreignField: "post", as: "likes_docs" } },
                     { $lookup: { from: "comments", localField: "_id", foreignField: "post", as: "comments_docs" } },
-                    { $addFields: {
+                    { $project: {
                         n_likes: { $size: "$likes_docs" },
                         n_comments: { $size: "$comments_docs" }
                     }},
-                    { $project: { likes_docs: 0, comments_docs: 0 } }
-                ]
+                    { $merge: { into: "posts", on: "_id", whenMatched: "merge", whenNotMatched: "discard" } }
+                ],
+                cursor: {}
             }
         """));
-        log.info("Created \"posts_view\" view");
+        mongo.dropCollection("posts_view");
+        log.info("Migrated \"posts_view\" view to materialized counters in \"posts\"");
     }
 }
@@ -0,0 +1,222 @@
+package tavernnet.repository;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import tavernnet.model.Job;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Acceso a la colección <code>jobs</code>. Se implementa de forma manual porque
+ * tomar una tarea debe ser una única operación atómica
+ * (<code>findAndModify</code>), para que dos trabajadores nunca ejecuten la
+ * misma a la vez.
+ * <br/>
+ * También incluye el borrado por lotes que usan las tareas de borrado en
+ * cascada.
+ */
+@Repository
+@NullMarked
+public class JobsRepository {
+    private final MongoTemplate mongo;
+
+    @Autowired
+    public JobsRepository(MongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    /**
+     * @param submitter Usuario que pide la tarea, si lo hay.
+     * @param holdFor Tiempo durante el que nadie la puede tomar, o
+     *                <code>null</code> para que se pueda tomar ya.
+     */
+    public Job create(Job.Type type, String target, @Nullable String submitter, @Nullable Duration holdFor) {
+        LocalDateTime now = LocalDateTime.now();
+        return mongo.insert(new Job(
+            null,
+            type,
+            target,
+            submitter,
+            Job.Status.PENDING,
+            Map.of(),
+            null,
+            null,
+            0,
+            holdFor == null ? null : now.plus(holdFor),
+            null,
+            now,
+            now
+        ));
+    }
+
+    public void delete(ObjectId id) {
+        mongo.remove(new Query(Criteria.where("_id").is(id)), Job.class);
+    }
+
+    public Optional<Job> findById(ObjectId id) {
+        return Optional.ofNullable(mongo.findById(id, Job.class));
+    }
+
+    /**
+     * Toma la tarea pendiente más antigua: una que no se ha empezado (o cuyo
+     * reintento ya toca), o que se estaba ejecutando pero cuyo trabajador ha
+     * dejado de renovarla.
+     * @param lease Tiempo durante el que nadie más la puede tomar.
+     */
+    public Optional<Job> claimNext(Duration lease) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = new Query(new Criteria().andOperator(
+            Criteria.where("status").in(Job.Status.PENDING, Job.Status.RUNNING),
+            new Criteria().orOperator(
+                Criteria.where("lease_until").is(null),
+                Criteria.where("lease_until").lt(now)
+            )
+        )).with(Sort.by(Sort.Direction.ASC, "created_at"));
+
+        return Optional.ofNullable(mongo.findAndModify(
+            query,
+            new Update()
+                .set("status", Job.Status.RUNNING)
+                .set("lease_until", now.plus(lease))
+                .set("updated_at", now)
+                .inc("attempts", 1),
+            FindAndModifyOptions.options().returnNew(true),
+            Job.class
+        ));
+    }
+
+    /** Suma progreso a la tarea y renueva su lease */
+    public void progress(ObjectId id, String counter, long processed, Duration lease) {
+        LocalDateTime now = LocalDateTime.now();
+        mongo.updateFirst(
+            new Query(Criteria.where("_id").is(id)),
+            new Update()
+                .inc("progress." + counter, processed)
+                .set("lease_until", now.plus(lease))
+                .set("updated_at", now),
+            Job.class
+        );
+    }
+
+    /** Guarda un personaje borrado por la tarea, para volver a barrerlo */
+    public void addPurgedCharacter(ObjectId id, ObjectId characterId) {
+        mongo.updateFirst(
+            new Query(Criteria.where("_id").is(id)),
+            new Update()
+                .addToSet("purged_characters", characterId)
+                .set("purged_at", LocalDateTime.now()),
+            Job.class
+        );
+    }
+
+    /**
+     * Marca como terminada la tarea.
+     * @param status Estado final: <code>DONE</code> o <code>FAILED</code>.
+     * @param error Motivo del fallo, si lo hay.
+     */
+    public void finish(ObjectId id, Job.Status status, @Nullable String error) {
+        mongo.updateFirst(
+            new Query(Criteria.where("_id").is(id)),
+            new Update()
+                .set("status", status)
+                .set("error", error)
+                .set("lease_until", null)
+                .set("updated_at", LocalDateTime.now()),
+            Job.class
+        );
+    }
+
+    /**
+     * Devuelve la tarea a pendiente, para que se vuelva a tomar.
+     * @param retryAfter Tiempo hasta que se puede volver a tomar.
+     * @param error Motivo del fallo, si lo hay.
+     */
+    public void release(ObjectId id, Duration retryAfter, @Nullable String error) {
+        LocalDateTime now = LocalDateTime.now();
+        mongo.updateFirst(
+            new Query(Criteria.where("_id").is(id)),
+            new Update()
+                .set("status", Job.Status.PENDING)
+                .set("error", error)
+                .set("lease_until", now.plus(retryAfter))
+                .set("updated_at", now),
+            Job.class
+        );
+    }
+
+    /** @return Si hay una tarea sin terminar de ese tipo sobre el recurso */
+    public boolean existsActive(Job.Type type, String target) {
+        return mongo.exists(
+            new Query(Criteria.where("type").is(type)
+                .and("target").is(target)
+                .and("status").in(Job.Status.PENDING, Job.Status.RUNNING)),
+            Job.class
+        );
+    }
+
+    /** @return Cuáles de los recursos tienen una tarea sin terminar de ese tipo */
+    public Set<String> findActiveTargets(Job.Type type, Collection<String> targets) {
+        Query query = new Query(Criteria.where("type").is(type)
+            .and("target").in(targets)
+            .and("status").in(Job.Status.PENDING, Job.Status.RUNNING));
+        return new HashSet<>(mongo.findDistinct(query, "target", Job.class, String.class));
+    }
+
+    /**
+     * Borra como mucho <code>limit</code> documentos de una colección. Así
+     * cada borrado es corto y no bloquea la base de datos durante mucho
+     * tiempo.
+     * @return Número de documentos borrados: si es menor que
+     * <code>limit</code>, ya no quedan más.
+     */
+    public long deleteBatch(String collection, String field, Object value, int limit) {
+        List<Object> ids = findBatch(collection, field, value, limit).stream()
+            .map(doc -> doc.get("_id"))
+            .toList();
+        return deleteByIds(collection, ids);
+    }
+
+    /**
+     * @param fields Campos a leer, además del <code>_id</code>.
+     * @return Como mucho <code>limit</code> documentos de la colección con el
+     * valor dado.
+     */
+    public List<Document> findBatch(String collection, String field, Object value, int limit, String... fields) {
+        Query query = new Query(Criteria.where(field).is(value)).limit(limit);
+        query.fields().include("_id");
+        for (String include : fields) {
+            query.fields().include(include);
+        }
+        return mongo.find(query, Document.class, collection);
+    }
+
+    /** @return El documento borrado, o <code>null</code> si no existía */
+    public @Nullable Document findAndDelete(String collection, Object id) {
+        return mongo.findAndRemove(new Query(Criteria.where("_id").is(id)), Document.class, collection);
+    }
+
+    /** @return Número de documentos borrados */
+    public long deleteByIds(String collection, Collection<?> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return mongo.remove(new Query(Criteria.where("_id").in(ids)), collection).getDeletedCount();
+    }
+}
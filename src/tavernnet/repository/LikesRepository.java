@@ -1,20 +1,43 @@
 package tavernnet.repository;
 
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.jspecify.annotations.NullMarked;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.bson.Document;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 /** Acceso a la coleccion <code>likes</code>. Como no existe una clase
  * <code>Like</code> en el modelo (no se usaria), se implementa de forma manual.
+ * <br/>
+ * Los likes sueltos ({@link #addLike}) actualizan directamente el contador
+ * <code>n_likes</code> del post. Los lotes ({@link #insertBatch},
+ * {@link #removeBatch}) solo devuelven la variación, que se acumula en
+ * {@link tavernnet.service.CounterService}.
  */
 @Repository
 @NullMarked
 public class LikesRepository {
+    private static final int STREAM_BATCH_SIZE = 1000;
+
     private final MongoTemplate mongo;
 
     @Autowired
@@ -22,35 +45,231 @@ public class LikesRepository {
         this.mongo = mongo;
     }
 
-    public void addLike(ObjectId postId, ObjectId authorId) {
-        Document like = new Document();
-        like.append("post", postId);
-        like.append("author", authorId);
-        mongo.insert(like, "likes");
+    /**
+     * @return <code>true</code> si el like es nuevo, <code>false</code> si ya
+     * existía (en ese caso no se modifica nada).
+     */
+    public boolean addLike(ObjectId postId, ObjectId authorId) {
+        // Con upsert, repetir un like no da error de clave duplicada y además
+        // se sabe si realmente se ha insertado para actualizar el contador
+        UpdateResult result = mongo.upsert(
+            likeQuery(postId, authorId),
+            new Update()
+                .setOnInsert("post", postId)
+                .setOnInsert("author", authorId),
+            "likes"
+        );
+
+        if (result.getUpsertedId() == null) {
+            return false;
+        }
+
+        incrementLikes(postId, 1);
+        return true;
     }
 
-    public void removeLike(ObjectId postId, ObjectId authorId) {
-        Query query = new Query(Criteria
-            .where("post")
-            .is(postId)
-            .and("author")
-            .is(authorId)
-        );
-        mongo.remove(query, "likes");
+    /**
+     * Cambio del estado de un like: darlo (<code>like = true</code>) o
+     * quitarlo (<code>like = false</code>).
+     */
+    public record LikeWrite(ObjectId post, ObjectId author, boolean like) {}
+
+    /** Documento de la colección <code>likes</code> */
+    public record Like(ObjectId id, ObjectId post, ObjectId author) {}
+
+    /**
+     * Resultado de {@link #insertBatch} y {@link #removeBatch}.
+     * @param deltas Variación del número de likes de cada post. Solo incluye
+     *               los likes que realmente se han insertado o borrado.
+     * @param failed Error de cada like cuya operación no se ha aplicado, por
+     *               su <code>_id</code>.
+     */
+    public record BatchResult(Map<ObjectId, Integer> deltas, Map<ObjectId, String> failed) {}
+
+    /**
+     * Inserta un lote de likes con una operación <i>bulk</i> desordenada. Los
+     * contadores de los posts no se modifican: se encarga quien lo llama con
+     * las variaciones devueltas.
+     * <br/>
+     * Cada like se inserta con el <code>_id</code> indicado, de forma que, si
+     * no se sabe si un intento anterior llegó a aplicarse, se puede comprobar
+     * con {@link #findExistingIds}.
+     * @throws org.springframework.dao.DataAccessException Si el lote ha
+     * fallado entero, sin saber qué operaciones se han aplicado.
+     */
+    public BatchResult insertBatch(List<Like> likes) {
+        if (likes.isEmpty()) {
+            return new BatchResult(Map.of(), Map.of());
+        }
+
+        // Con upsert, repetir un like no da error de clave duplicada, y el
+        // resultado indica qué operaciones han insertado
+        BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, "likes");
+        for (Like like : likes) {
+            bulk.upsert(
+                likeQuery(like.post(), like.author()),
+                new Update()
+                    .setOnInsert("_id", like.id())
+                    .setOnInsert("post", like.post())
+                    .setOnInsert("author", like.author())
+            );
+        }
+
+        Map<ObjectId, String> failed = new HashMap<>();
+        BulkWriteResult result = execute(bulk, likes, failed);
+        Map<ObjectId, Integer> deltas = new HashMap<>();
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            deltas.merge(likes.get(upsert.getIndex()).post(), 1, Integer::sum);
+        }
+        return new BatchResult(deltas, failed);
+    }
+
+    /**
+     * Borra un lote de likes existentes con una operación <i>bulk</i>
+     * desordenada. Los contadores de los posts no se modifican: se encarga
+     * quien lo llama con las variaciones devueltas.
+     * <br/>
+     * NOTA: el resultado solo indica el total de documentos borrados, así que
+     * se cuenta como borrado todo like cuya operación no ha fallado. Cada
+     * instancia aplica sus lotes de uno en uno, por lo que solo puede contarse
+     * dos veces si otra instancia borra el mismo like a la vez.
+     * @throws org.springframework.dao.DataAccessException Si el lote ha
+     * fallado entero, sin saber qué operaciones se han aplicado.
+     */
+    public BatchResult removeBatch(List<Like> likes) {
+        if (likes.isEmpty()) {
+            return new BatchResult(Map.of(), Map.of());
+        }
+
+        BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, "likes");
+        for (Like like : likes) {
+            bulk.remove(new Query(Criteria.where("_id").is(like.id())));
+        }
+
+        Map<ObjectId, String> failed = new HashMap<>();
+        execute(bulk, likes, failed);
+        Map<ObjectId, Integer> deltas = new HashMap<>();
+        for (Like like : likes) {
+            if (!failed.containsKey(like.id())) {
+                deltas.merge(like.post(), -1, Integer::sum);
+            }
+        }
+        return new BatchResult(deltas, failed);
+    }
+
+    /** @return Los likes que existen de esos pares <code>(post, author)</code> */
+    public List<Like> findLikes(Collection<LikeWrite> writes) {
+        if (writes.isEmpty()) {
+            return List.of();
+        }
+
+        Query query = new Query(new Criteria().orOperator(writes.stream()
+            .map(write -> Criteria.where("post").is(write.post()).and("author").is(write.author()))
+            .toList()
+        ));
+        query.fields().include("post", "author");
+
+        return mongo.find(query, Document.class, "likes").stream()
+            .map(like -> new Like(like.getObjectId("_id"), like.getObjectId("post"), like.getObjectId("author")))
+            .toList();
     }
 
-    public void deleteByPostId(ObjectId postId) {
-        Query query = new Query(Criteria.where("post").is(postId));
-        mongo.remove(query, "likes");
+    /** @return Cuáles de los likes existen, por su <code>_id</code> */
+    public Set<ObjectId> findExistingIds(Collection<ObjectId> ids) {
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+
+        Query query = new Query(Criteria.where("_id").in(ids));
+        query.fields().include("_id");
+
+        return mongo.find(query, Document.class, "likes").stream()
+            .map(like -> like.getObjectId("_id"))
+            .collect(Collectors.toSet());
     }
 
     public boolean existsLike(ObjectId postId, ObjectId authorId) {
-        Query query = new Query(Criteria
+        return mongo.exists(likeQuery(postId, authorId), "likes");
+    }
+
+    /**
+     * @param authorId Personaje que ha dado los likes.
+     * @param limit Número máximo de likes a tener en cuenta.
+     * @return Posts a los que el personaje ha dado like, los más recientes
+     * primero (el <code>_id</code> de un like incluye su fecha de creación).
+     */
+    public List<ObjectId> findRecentLikedPosts(ObjectId authorId, int limit) {
+        Query query = new Query(Criteria.where("author").is(authorId))
+            .with(Sort.by(Sort.Direction.DESC, "_id"))
+            .limit(limit);
+        query.fields().include("post");
+
+        return mongo.find(query, Document.class, "likes").stream()
+            .map(like -> like.getObjectId("post"))
+            .toList();
+    }
+
+    /**
+     * @param authorId Personaje que ha dado los likes.
+     * @param postIds Posts a comprobar.
+     * @return Cuáles de los posts tienen un like del personaje, en una sola
+     * consulta.
+     */
+    public Set<ObjectId> findLikedAmong(ObjectId authorId, Collection<ObjectId> postIds) {
+        Query query = new Query(Criteria.where("author").is(authorId).and("post").in(postIds));
+        query.fields().include("post");
+
+        return mongo.find(query, Document.class, "likes").stream()
+            .map(like -> like.getObjectId("post"))
+            .collect(Collectors.toSet());
+    }
+
+    /**
+     * Todos los likes de la colección, como cambios a aplicar. Se debe cerrar
+     * el stream tras usarlo.
+     */
+    public Stream<LikeWrite> streamAll() {
+        Query query = new Query().cursorBatchSize(STREAM_BATCH_SIZE);
+        query.fields().include("post", "author");
+
+        return mongo.stream(query, Document.class, "likes")
+            .map(like -> new LikeWrite(like.getObjectId("post"), like.getObjectId("author"), true));
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    private static Query likeQuery(ObjectId postId, ObjectId authorId) {
+        return new Query(Criteria
             .where("post")
             .is(postId)
             .and("author")
             .is(authorId)
         );
-        return mongo.exists(query, "likes");
+    }
+
+    /**
+     * Ejecuta una operación <i>bulk</i> desordenada: si alguna operación
+     * falla, las demás se aplican igualmente.
+     * @param failed Se añade el error de cada like cuya operación ha fallado.
+     * @return Resultado de las operaciones que se han aplicado.
+     */
+    private static BulkWriteResult execute(BulkOperations bulk, List<Like> likes, Map<ObjectId, String> failed) {
+        try {
+            return bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failed.put(likes.get(error.getIndex()).id(), error.getMessage());
+            }
+            return e.getResult();
+        }
+    }
+
+    /** Actualiza de forma atómica el contador de likes del post */
+    private void incrementLikes(ObjectId postId, int delta) {
+        mongo.updateFirst(
+            new Query(Criteria.where("_id").is(postId)),
+            new Update().inc("n_likes", delta),
+            "posts"
+        );
     }
 }
@@ -1,10 +1,17 @@
 package tavernnet.repository;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import tavernnet.model.Party;
 
+import java.util.List;
+
 public interface PartyRepository extends MongoRepository<Party, String> {
 
     @Override
     boolean existsById(String s);
+
+    /** Solo el nombre de las parties del usuario: como DM o con sus personajes */
+    @Query(value = "{ $or: [ { 'DM._id': ?0 }, { 'characters.user': ?0 } ] }", fields = "{ '_id': 1 }")
+    List<Party> findNamesByMember(String username);
 }
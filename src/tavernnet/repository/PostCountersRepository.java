@@ -0,0 +1,81 @@
+package tavernnet.repository;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.util.Map;
+
+/**
+ * Actualización de los contadores <code>n_likes</code>,
+ * <code>n_comments</code> y <code>n_views</code> de la colección
+ * <code>posts</code> en lotes.
+ */
+@Repository
+@NullMarked
+public class PostCountersRepository {
+    private final MongoTemplate mongo;
+
+    @Autowired
+    public PostCountersRepository(MongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    /** Variación de los contadores de un post */
+    public record Counts(long likes, long comments) {
+        public static final Counts ZERO = new Counts(0, 0);
+
+        public Counts plus(Counts other) {
+            return new Counts(likes + other.likes, comments + other.comments);
+        }
+
+        public boolean isZero() {
+            return likes == 0 && comments == 0;
+        }
+    }
+
+    /**
+     * Suma las variaciones a los contadores de cada post, todas en una única
+     * operación <i>bulk</i> desordenada. Los posts que ya no existen se
+     * ignoran.
+     */
+    public void increment(Map<ObjectId, Counts> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, "posts");
+        deltas.forEach((postId, delta) -> bulk.updateOne(
+            new Query(Criteria.where("_id").is(postId)),
+            new Update()
+                .inc("n_likes", delta.likes())
+                .inc("n_comments", delta.comments())
+        ));
+        bulk.execute();
+    }
+
+    /**
+     * Actualiza el número de visitantes únicos de cada post, en una única
+     * operación <i>bulk</i> desordenada. Con <code>$max</code> el valor nunca
+     * disminuye, aunque dos instancias escriban a la vez estimaciones
+     * distintas.
+     */
+    public void setViews(Map<ObjectId, Long> views) {
+        if (views.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, "posts");
+        views.forEach((postId, count) -> bulk.updateOne(
+            new Query(Criteria.where("_id").is(postId)),
+            new Update().max("n_views", count)
+        ));
+        bulk.execute();
+    }
+}
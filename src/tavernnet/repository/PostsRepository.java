@@ -2,11 +2,15 @@ package tavernnet.repository;
 
 import org.bson.types.ObjectId;
 import org.jspecify.annotations.NullMarked;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
+import tavernnet.model.Comment;
 import tavernnet.model.Post;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -17,4 +21,67 @@ public interface PostsRepository
     // No usar deleteById ya que ignora si no existe
     @Query(value = "{ '_id': ?0 }", delete = true)
     Optional<Post> deletePostById(ObjectId id);
+
+    /**
+     * Solo la versión, los contadores y el autor del post, para calcular su
+     * ETag sin leer el contenido.
+     */
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'version': 1, 'n_likes': 1, 'n_comments': 1, 'n_views': 1, 'author': 1 }")
+    Optional<Post> findVersionById(ObjectId id);
+
+    // ==== COMENTARIOS ========================================================
+
+    // Se parte del post y se añade una página de comentarios con un $lookup,
+    // de forma que en un único acceso a la base de datos se comprueba que el
+    // post existe y se obtienen sus comentarios. El $lookup usa el índice
+    // { post, date, _id } de los comentarios, por lo que su coste solo depende
+    // del tamaño de la página y no del número de comentarios del post.
+
+    /** Primera página de comentarios de un post, los más antiguos primero */
+    @Aggregation(pipeline = {
+        "{ $match: { '_id': ?0 } }",
+        """
+        {
+            $lookup: {
+                'from': 'comments',
+                'localField': '_id',
+                'foreignField': 'post',
+                'pipeline': [
+                    { $sort: { 'date': 1, '_id': 1 } },
+                    { $limit: ?1 }
+                ],
+                'as': 'comments'
+            }
+        }
+        """,
+        "{ $project: { 'comments': true } }"
+    })
+    List<Comment.PostComments> findFirstComments(ObjectId postId, int limit);
+
+    /** Siguientes páginas de comentarios: posteriores a la posición dada */
+    @Aggregation(pipeline = {
+        "{ $match: { '_id': ?0 } }",
+        """
+        {
+            $lookup: {
+                'from': 'comments',
+                'localField': '_id',
+                'foreignField': 'post',
+                'pipeline': [
+                    { $match: { $or: [ { 'date': { $gt: ?1 } }, { 'date': ?1, '_id': { $gt: ?2 } } ] } },
+                    { $sort: { 'date': 1, '_id': 1 } },
+                    { $limit: ?3 }
+                ],
+                'as': 'comments'
+            }
+        }
+        """,
+        "{ $project: { 'comments': true } }"
+    })
+    List<Comment.PostComments> findCommentsAfter(
+        ObjectId postId,
+        LocalDateTime afterDate,
+        ObjectId afterId,
+        int limit
+    );
 }
@@ -2,13 +2,134 @@ package tavernnet.repository;
 
 import org.bson.types.ObjectId;
 import org.jspecify.annotations.NullMarked;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Aggregation;
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 import tavernnet.model.PostView;
+import tavernnet.model.SearchHit;
 
-/** Acceso a la vista <code>posts_view</code>. No se permiten operaciones de escritura */
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Acceso de solo lectura a <code>posts</code> junto con sus contadores
+ * materializados. Para escribir se debe usar {@link PostsRepository}.
+ */
 @Repository
 @NullMarked
 public interface PostsViewRepository
     extends MongoRepository<PostView, ObjectId> {
+
+    int STREAM_BATCH_SIZE = 100;
+
+    // NOTA: las consultas del feed usan el índice { date: -1, _id: -1 }. El
+    // Pageable solo se usa para limitar el número de resultados (página 0), de
+    // forma que nunca se hace un $skip.
+
+    /** Primera página del feed: los posts más recientes */
+    @Query(value = "{}", sort = "{ 'date': -1, '_id': -1 }")
+    List<PostView> findLatest(Pageable limit);
+
+    /** Siguientes páginas del feed: posts anteriores a la posición dada */
+    @Query(
+        value = "{ $or: [ { 'date': { $lt: ?0 } }, { 'date': ?0, '_id': { $lt: ?1 } } ] }",
+        sort = "{ 'date': -1, '_id': -1 }"
+    )
+    List<PostView> findLatestBefore(LocalDateTime date, ObjectId id, Pageable limit);
+
+    // Para respuestas en streaming: se leen del cursor en lotes de tamaño fijo
+    // en lugar de cargar todos los resultados en memoria
+
+    @Meta(cursorBatchSize = STREAM_BATCH_SIZE)
+    @Query(value = "{}", sort = "{ 'date': -1, '_id': -1 }")
+    Stream<PostView> streamLatest();
+
+    @Meta(cursorBatchSize = STREAM_BATCH_SIZE)
+    @Query(
+        value = "{ $or: [ { 'date': { $lt: ?0 } }, { 'date': ?0, '_id': { $lt: ?1 } } ] }",
+        sort = "{ 'date': -1, '_id': -1 }"
+    )
+    Stream<PostView> streamLatestBefore(LocalDateTime date, ObjectId id);
+
+    // ==== POSTS DE UN PERSONAJE ==============================================
+
+    // Igual que el feed, sobre el índice { author, date: -1, _id: -1 }
+
+    /** Posts más recientes de un personaje */
+    @Query(value = "{ 'author': ?0 }", sort = "{ 'date': -1, '_id': -1 }")
+    List<PostView> findLatestByAuthor(ObjectId author, Pageable limit);
+
+    /** Posts de un personaje anteriores a la posición dada */
+    @Query(
+        value = "{ 'author': ?0, $or: [ { 'date': { $lt: ?1 } }, { 'date': ?1, '_id': { $lt: ?2 } } ] }",
+        sort = "{ 'date': -1, '_id': -1 }"
+    )
+    List<PostView> findLatestByAuthorBefore(ObjectId author, LocalDateTime date, ObjectId id, Pageable limit);
+
+    /** Solo los contadores de cada uno de los posts dados */
+    @Query(value = "{ '_id': { $in: ?0 } }", fields = "{ 'n_likes': 1, 'n_comments': 1, 'n_views': 1 }")
+    List<PostView> findCountersOf(Collection<ObjectId> ids);
+
+    /** Posts con más interacciones, usando el índice de los contadores */
+    @Query(value = "{}", sort = "{ 'n_likes': -1, 'n_comments': -1 }")
+    List<PostView> findMostEngaged(Pageable limit);
+
+    /** Solo el autor de cada uno de los posts dados */
+    @Query(value = "{ '_id': { $in: ?0 } }", fields = "{ 'author': 1 }")
+    List<PostView> findAuthorsOf(Collection<ObjectId> ids);
+
+    // ==== BÚSQUEDA ===========================================================
+
+    // Búsqueda sobre el índice de texto { title, content }, de más a menos
+    // relevante. Se pagina por cursor sobre (score, _id), igual que el feed,
+    // pero textScore se calcula en cada consulta: todas las coincidencias se
+    // puntúan y ordenan de nuevo en cada página.
+
+    /** Primera página de posts que contienen el texto buscado */
+    @Aggregation(pipeline = {
+        "{ $match: { $text: { $search: ?0 } } }",
+        """
+        {
+            $project: {
+                'type': { $literal: 'post' },
+                'post': '$_id',
+                'author': 1,
+                'title': 1,
+                'content': 1,
+                'date': 1,
+                'score': { $meta: 'textScore' }
+            }
+        }
+        """,
+        "{ $sort: { 'score': -1, '_id': -1 } }",
+        "{ $limit: ?1 }"
+    })
+    List<SearchHit> search(String text, int limit);
+
+    /** Siguientes páginas: posts menos relevantes que la posición dada */
+    @Aggregation(pipeline = {
+        "{ $match: { $text: { $search: ?0 } } }",
+        """
+        {
+            $project: {
+                'type': { $literal: 'post' },
+                'post': '$_id',
+                'author': 1,
+                'title': 1,
+                'content': 1,
+                'date': 1,
+                'score': { $meta: 'textScore' }
+            }
+        }
+        """,
+        "{ $match: { $or: [ { 'score': { $lt: ?1 } }, { 'score': ?1, '_id': { $lt: ?2 } } ] } }",
+        "{ $sort: { 'score': -1, '_id': -1 } }",
+        "{ $limit: ?3 }"
+    })
+    List<SearchHit> searchAfter(String text, double score, ObjectId id, int limit);
 }
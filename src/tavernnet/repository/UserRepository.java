@@ -1,14 +1,16 @@
 package tavernnet.repository;
 
-import org.bson.Document;
 import org.jspecify.annotations.NullMarked;
-import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.jspecify.annotations.Nullable;
 import org.springframework.data.mongodb.repository.Aggregation;
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import tavernnet.model.User;
 
@@ -16,49 +18,48 @@ import tavernnet.model.User;
 @NullMarked
 public interface UserRepository extends MongoRepository<User, String> {
 
+    // Búsqueda por nombre sin el índice de Redis. Un único $match con la
+    // expresión regular recorre las claves del índice de _id (no los
+    // documentos); los que empiezan por el texto van primero.
+
+    /**
+     * @param regex Texto a buscar, ya escapado con <code>Pattern.quote</code>.
+     * @param term Texto a buscar, sin escapar.
+     */
+    @Aggregation(pipeline = {
+        "{ $match: { '_id': { $regex: ?0 } } }",
+        "{ $addFields: { 'rank': { $cond: [ { $eq: [ { $indexOfCP: [ '$_id', ?1 ] }, 0 ] }, 0, 1 ] } } }",
+        "{ $sort: { 'rank': 1, '_id': 1 } }",
+        "{ $skip: ?2 }",
+        "{ $limit: ?3 }",
+        "{ $project: { '_id': 0, 'username': '$_id' } }"
+    })
+    List<String> searchByUsername(String regex, String term, int skip, int limit);
+
+    /** Número exacto de usuarios cuyo nombre contiene el texto */
+    @Query(value = "{ '_id': { $regex: ?0 } }", count = true)
+    long countByUsername(String regex);
+
+    /**
+     * Número de usuarios cuyo nombre contiene el texto, dejando de contar al
+     * llegar al límite.
+     * @return El número de usuarios, como mucho <code>cap</code>; o
+     * <code>null</code> si no hay ninguno.
+     */
     @Aggregation(pipeline = {
-        // el usuario que coincida entero primero
-        "{ $match: { '_id': ?0 } }",
-        "{ $project: { '_id': true } }",
-        // luego unir con los que empiecen por ese trozo
-        """
-        {
-            $unionWith: {
-                'coll': 'users',
-                'pipeline': [
-                    { $match: { '_id': /^?0/ } },
-                    { $project: { '_id': true } },
-                    { $sort: { '_id': 1 } }
-                ]
-            }
-        }
-        """,
-        // a continuación cualquier substring
-        """
-        {
-            $unionWith: {
-                'coll': 'users',
-                'pipeline': [
-                    { $match: { '_id': /?0/ } },
-                    { $project: { '_id': true } },
-                    { $sort: { '_id': 1 } }
-                ]
-            }
-        }
-        """,
-        // eliminar duplicados
-        "{ $group: { '_id': '$_id' } }",
-        // elementos de paginación y número de resultados
-        """
-        {
-            $facet: {
-                'total_count': [{ $count: 'count' }],
-                'page_data': [ {$skip: ?1}, {$limit: ?2} ]
-            }
-        }
-        """
+        "{ $match: { '_id': { $regex: ?0 } } }",
+        "{ $limit: ?1 }",
+        "{ $count: 'count' }"
     })
-    AggregationResults<Document> searchByUsernameWithCount(String regex, int skip, int limit);
+    @Nullable Long countByUsernameUpTo(String regex, long cap);
+
+    /**
+     * Todos los nombres de usuario, leídos del cursor en lotes, para construir
+     * el índice de búsqueda (ver {@link tavernnet.service.UsernameIndexService}).
+     */
+    @Meta(cursorBatchSize = 1000)
+    @Aggregation("{ $project: { '_id': 0, 'username': '$_id' } }")
+    Stream<String> streamUsernames();
 
     @Query("{'_id':  '?0'}")
     Optional<User> findByUsername(String username);
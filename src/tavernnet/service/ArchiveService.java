@@ -0,0 +1,215 @@
+package tavernnet.service;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonParseException;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tavernnet.exception.DuplicatedResourceException;
+import tavernnet.exception.InvalidParameterException;
+import tavernnet.repository.ArchiveRepository;
+import tavernnet.repository.ArchiveRepository.Kind;
+import tavernnet.repository.LikesRepository.LikeWrite;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Exportación e importación de posts, comentarios y likes en NDJSON.
+ * <br/>
+ * Cada línea es <code>{"type": "post|comment|like", "document": {...}}</code>,
+ * con el documento tal cual está en MongoDB en <i>Extended JSON</i>, así que
+ * los <code>ObjectId</code>, las fechas y los tipos numéricos se conservan. Se
+ * exportan primero los posts, después los comentarios y por último los likes,
+ * para que al importarlos nunca aparezca un comentario antes que su post.
+ * <br/>
+ * En ninguno de los dos sentidos se cargan los datos en memoria: la
+ * exportación escribe según lee del cursor y la importación inserta lotes de
+ * <code>archive.batch-size</code> documentos según lee las líneas.
+ */
+@Service
+@NullMarked
+public class ArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchiveService.class);
+    private static final JsonWriterSettings JSON = JsonWriterSettings.builder()
+        .outputMode(JsonMode.EXTENDED)
+        .build();
+
+    /**
+     * Resultado de una importación.
+     * @param documentsPerSecond Documentos insertados por segundo.
+     */
+    public record ImportReport(
+        long posts,
+        long comments,
+        long likes,
+        long elapsedMillis,
+        long documentsPerSecond
+    ) {}
+
+    private final ArchiveRepository archiveRepo;
+    private final LikeIndexService likeIndex;
+
+    /** Documentos que se insertan con cada <code>insertMany</code> */
+    @Value("${archive.batch-size:1000}")
+    private int batchSize;
+
+    @Autowired
+    public ArchiveService(ArchiveRepository archiveRepo, LikeIndexService likeIndex) {
+        this.archiveRepo = archiveRepo;
+        this.likeIndex = likeIndex;
+    }
+
+    /** Escribe todos los posts, comentarios y likes, uno por línea */
+    public void exportTo(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        long start = System.nanoTime();
+        long total = 0;
+        for (Kind kind : Kind.values()) {
+            String type = type(kind);
+            try (Stream<Document> documents = archiveRepo.streamAll(kind)) {
+                Iterator<Document> it = documents.iterator();
+                while (it.hasNext()) {
+                    writer.write(new Document("type", type).append("document", it.next()).toJson(JSON));
+                    writer.write('\n');
+                    total++;
+                }
+            }
+        }
+        writer.flush();
+        log.info("Exported {} documents in {} ms", total, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Inserta los documentos leídos, en lotes ordenados. Si falla una línea,
+     * se mantiene lo insertado hasta ese momento.
+     * @throws InvalidParameterException Si una línea no es válida.
+     * @throws DuplicatedResourceException Si un documento ya existe.
+     */
+    public ImportReport importFrom(InputStream in)
+        throws IOException, InvalidParameterException, DuplicatedResourceException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Map<Kind, Long> inserted = new EnumMap<>(Kind.class);
+        List<Document> batch = new ArrayList<>(batchSize);
+        Kind batchKind = null;
+        long start = System.nanoTime();
+
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            Document entry;
+            try {
+                entry = Document.parse(line);
+            } catch (JsonParseException e) {
+                throw new InvalidParameterException("line", String.valueOf(lineNumber));
+            }
+            Kind kind = kind(entry.get("type"));
+            if (kind == null || !(entry.get("document") instanceof Document document)) {
+                throw new InvalidParameterException("line", String.valueOf(lineNumber));
+            }
+
+            // Cada lote es de una sola colección, y se respeta el orden
+            if (kind != batchKind || batch.size() >= batchSize) {
+                if (batchKind != null) {
+                    insert(batchKind, batch, inserted);
+                }
+                batch.clear();
+                batchKind = kind;
+            }
+            batch.add(document);
+        }
+        if (batchKind != null) {
+            insert(batchKind, batch, inserted);
+        }
+
+        long elapsed = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        long total = inserted.values().stream().mapToLong(Long::longValue).sum();
+        ImportReport report = new ImportReport(
+            inserted.getOrDefault(Kind.POST, 0L),
+            inserted.getOrDefault(Kind.COMMENT, 0L),
+            inserted.getOrDefault(Kind.LIKE, 0L),
+            elapsed,
+            total * 1000 / elapsed
+        );
+        log.info("Imported {} documents in {} ms ({} docs/s)", total, elapsed, report.documentsPerSecond());
+        return report;
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    private void insert(
+        Kind kind,
+        List<Document> batch,
+        Map<Kind, Long> inserted
+    ) throws DuplicatedResourceException {
+        try {
+            archiveRepo.insertAll(kind, batch);
+        } catch (MongoBulkWriteException e) {
+            BulkWriteError error = e.getWriteErrors().getFirst();
+            if (error.getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+            // Con inserción ordenada, los anteriores al que falla sí se insertan
+            inserted.merge(kind, (long) error.getIndex(), Long::sum);
+            Document duplicated = batch.get(error.getIndex());
+            log.warn("Import stopped at duplicated {} after inserting {}", type(kind), inserted);
+            throw new DuplicatedResourceException(duplicated, type(kind), String.valueOf(duplicated.get("_id")));
+        }
+
+        inserted.merge(kind, (long) batch.size(), Long::sum);
+
+        // Los likes importados también cuentan para likedByMe
+        if (kind == Kind.LIKE) {
+            List<LikeWrite> likes = new ArrayList<>(batch.size());
+            for (Document like : batch) {
+                if (like.get("post") instanceof ObjectId post && like.get("author") instanceof ObjectId author) {
+                    likes.add(new LikeWrite(post, author, true));
+                }
+            }
+            likeIndex.apply(likes);
+        }
+    }
+
+    private static @Nullable Kind kind(@Nullable Object type) {
+        for (Kind kind : Kind.values()) {
+            if (type(kind).equals(type)) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    private static String type(Kind kind) {
+        return kind.name().toLowerCase(Locale.ROOT);
+    }
+}
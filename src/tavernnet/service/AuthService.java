@@ -53,6 +53,7 @@ public class AuthService {
     private final UserRefreshTokenRepository userRefreshRepo;
     private final MongoTemplate mongo;
     private final CharacterRepository charRepo;
+    private final SessionService sessions;
 
     // NOTA: estos no pueden ser null por el valor por defecto dado
     /** Duracion del jwt (default: 15min) */
@@ -72,7 +73,8 @@ public class AuthService {
         UserRefreshTokenRepository userRefreshRepo,
         UserRepository userRepo,
         MongoTemplate mongo,
-        CharacterRepository charRepo
+        CharacterRepository charRepo,
+        SessionService sessions
     ) {
         this.authMng = authMng;
         this.keyPair = keyPair;
@@ -83,6 +85,7 @@ public class AuthService {
         this.userRepo = userRepo;
         this.mongo = mongo;
         this.charRepo = charRepo;
+        this.sessions = sessions;
     }
 
     // ==== TIPOS DE DATOS NECESARIOS ==========================================
@@ -197,7 +200,7 @@ public class AuthService {
         log.debug("POST /auth/refresh found user=\"{}\" with Refresh=\"{}\" activeChar=\"{}\"", token.username(), refreshToken, token.activeCharacter());
 
         // NOTA: si los usuarios se borran, también se eliminan sus tokens de
-        // Redis. En caso de querer implementar la posibilidad de banear cuentas,
+        // Redis (ver SessionService). En caso de querer implementar la posibilidad de banear cuentas,
         // se debería comprobar aquí.
 
         String newJwt = generateJwt(token.username(), token.role(), token.activeCharacter());
@@ -216,7 +219,7 @@ public class AuthService {
         log.debug("POST /auth/logout user=\"{}\"", user.username());
 
         // Invalidar tokens del usuario
-        deleteRefreshTokensByUsername(user.username());
+        sessions.deleteRefreshTokens(user.username());
     }
 
     // NOTA: se implementa aquí porque está más relacionado con la seguridad que
@@ -282,9 +285,11 @@ public class AuthService {
             GlobalRole.valueOf(claims.get(JWT_ROLE, String.class))
         );
 
-        // NOTA: esto puede dar problemas si se borra el usuario, ya que el JWT
-        // seguirá siendo válido. El JWT tiene una corta duración, por lo que no
-        // es mucho problema, de lo contrario, habría que chequear aquí la BD.
+        // Un JWT sigue siendo válido aunque se borre el usuario: se rechazan
+        // los emitidos antes de revocar sus sesiones
+        if (sessions.isRevoked(claims.getSubject(), claims.getIssuedAt().toInstant())) {
+            throw new JwtException("JWT has been revoked");
+        }
 
         // Devolver objeto autenticado para poner en el contexto global
         return UsernamePasswordAuthenticationToken.authenticated(
@@ -324,6 +329,17 @@ public class AuthService {
         return resource.getOwnerId().equals(user.activeCharacter());
     }
 
+    public boolean isJobSubmitter(ObjectId jobId, User.AuthUser user) throws ResourceNotFoundException {
+        Job job = mongo.findById(jobId, Job.class);
+        if (job == null) {
+            log.debug("Not found job \"{}\"", jobId);
+            throw new ResourceNotFoundException("Job", jobId.toHexString());
+        }
+
+        log.debug("Submitter of job \"{}\" is \"{}\" AuthUser=\"{}\"", jobId, job.submitter(), user.username());
+        return user.username().equals(job.submitter());
+    }
+
     public boolean isCharacterOwnerByName(String userId, String characterName, User.AuthUser user) throws ResourceNotFoundException {
         if (!userRepo.existsById(userId)) {
             throw new ResourceNotFoundException("User", userId);
@@ -373,7 +389,7 @@ public class AuthService {
         // Gracias a esto, es posible revocar tokens de usuarios, permitiendo
         // implementar logout (tanto por el usuario como si hay brechas de
         // seguridad)
-        deleteRefreshTokensByUsername(username);
+        sessions.deleteRefreshTokens(username);
         refreshRepo.save(refreshToken);
         userRefreshRepo.save(userRefresh);
 
@@ -383,16 +399,6 @@ public class AuthService {
 
     // ==== FUNCIONES DE AYUDA =================================================
 
-    private void deleteRefreshTokensByUsername(String username) {
-        var optionalUrt = userRefreshRepo.findById(username);
-        optionalUrt.ifPresent(urt -> {
-            // Borrar tokens
-            refreshRepo.deleteById(urt.uuid());
-            // Borrar la entrada del usuario
-            userRefreshRepo.deleteById(urt.username());
-        });
-    }
-
     private static User.AuthUser getAuthUser() throws InvalidCredentialsException {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
 
@@ -0,0 +1,106 @@
+package tavernnet.service;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tavernnet.model.Character;
+import tavernnet.repository.CharacterRepository;
+import tavernnet.utils.LruCache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Datos de los autores de posts y comentarios (<code>?expand=author</code>).
+ * <br/>
+ * Para una página de resultados se juntan los autores distintos y los que no
+ * están en la caché se obtienen con una única consulta <code>$in</code> que
+ * solo lee el nombre, el usuario y la raza. Así una página cuesta como mucho
+ * una consulta más, sin importar cuántos autores tenga.
+ */
+@Service
+@NullMarked
+public class AuthorService {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthorService.class);
+
+    private final CharacterRepository charRepo;
+    private final LruCache<ObjectId, Character.AuthorSummary> cache;
+
+    @Autowired
+    public AuthorService(
+        CharacterRepository charRepo,
+        @Value("${authors.cache-size:10000}") int cacheSize,
+        // Los cambios hechos en otra instancia tardan como mucho esto en verse
+        @Value("${authors.cache-ttl:PT1M}") Duration cacheTtl
+    ) {
+        this.charRepo = charRepo;
+        this.cache = new LruCache<>(cacheSize, cacheTtl);
+    }
+
+    /**
+     * @param ids Personajes a buscar.
+     * @return Datos de cada personaje. Los que no existen no se incluyen.
+     */
+    public Map<ObjectId, Character.AuthorSummary> summaries(Collection<ObjectId> ids) {
+        Map<ObjectId, Character.AuthorSummary> result = new HashMap<>();
+        Set<ObjectId> missing = new LinkedHashSet<>();
+        for (ObjectId id : ids) {
+            Character.AuthorSummary summary = cache.get(id);
+            if (summary != null) {
+                result.put(id, summary);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            int cached = result.size();
+            for (Character character : charRepo.getSummariesById(missing)) {
+                Character.AuthorSummary summary = new Character.AuthorSummary(character);
+                cache.put(character.id(), summary);
+                result.put(character.id(), summary);
+            }
+            log.debug("Loaded {} authors, {} were cached", missing.size(), cached);
+        }
+        return result;
+    }
+
+    /**
+     * Añade a cada elemento los datos de su autor.
+     * @param authorOf Obtiene el autor del elemento.
+     * @param withAuthor Copia el elemento con los datos del autor, o con
+     *                   <code>null</code> si el personaje ya no existe.
+     */
+    public <T> List<T> expand(
+        List<T> items,
+        Function<T, ObjectId> authorOf,
+        BiFunction<T, Character.@Nullable AuthorSummary, T> withAuthor
+    ) {
+        if (items.isEmpty()) {
+            return items;
+        }
+
+        Map<ObjectId, Character.AuthorSummary> authors = summaries(items.stream().map(authorOf).toList());
+        return items.stream()
+            .map(item -> withAuthor.apply(item, authors.get(authorOf.apply(item))))
+            .toList();
+    }
+
+    /** Descarta los datos guardados de un personaje modificado o borrado */
+    public void evict(ObjectId characterId) {
+        cache.remove(characterId);
+    }
+}
@@ -22,6 +22,7 @@ import tavernnet.exception.ResourceNotFoundException;
 import tavernnet.model.Character;
 import tavernnet.repository.CharacterRepository;
 import tavernnet.repository.UserRepository;
+import tavernnet.utils.ETags;
 import tavernnet.utils.patch.JsonPatch;
 import tavernnet.utils.patch.JsonPatchOperation;
 import tavernnet.utils.patch.exceptions.JsonPatchFailedException;
@@ -35,18 +36,30 @@ public class CharacterService {
     private final UserRepository userRepo;
     private final ObjectMapper mapper;
     private final Validator validator;
+    private final ResponseCacheService responseCache;
+    private final AuthorService authors;
+    private final ExistenceService existence;
+    private final ProfileService profiles;
 
     @Autowired
     public CharacterService(
         CharacterRepository charRepo,
         UserRepository userRepo,
         ObjectMapper mapper,
-        Validator validator
+        Validator validator,
+        ResponseCacheService responseCache,
+        AuthorService authors,
+        ExistenceService existence,
+        ProfileService profiles
     ) {
         this.charRepo = charRepo;
         this.userRepo = userRepo;
         this.mapper = mapper;
         this.validator = validator;
+        this.responseCache = responseCache;
+        this.authors = authors;
+        this.existence = existence;
+        this.profiles = profiles;
     }
 
     public Collection<Character.PublicCharacter> getCharactersByUser(String username) throws ResourceNotFoundException {
@@ -81,6 +94,26 @@ public class CharacterService {
         return new Character.PublicCharacter(character);
     }
 
+    /**
+     * ETag de {@link #getCharacter}, calculado solo con el ID y la versión del
+     * personaje. El ID distingue a un personaje borrado de otro nuevo con el
+     * mismo nombre.
+     * @throws ResourceNotFoundException Si el personaje no se encuentra.
+     */
+    public String getCharacterETag(
+        String username,
+        String characterName
+    ) throws ResourceNotFoundException {
+        if (!userRepo.existsById(username)) {
+            throw new ResourceNotFoundException("User", username);
+        }
+
+        Character character = charRepo
+            .getVersionByName(username, characterName)
+            .orElseThrow(() -> new ResourceNotFoundException("Character", characterName));
+        return ETags.of(character.id(), character.version());
+    }
+
     /**
      * @param newCharacter Contenido del nuevo personaje a crear.
      * @return Id del nuevo character creado.
@@ -108,6 +141,8 @@ public class CharacterService {
         }
 
         Character realCharacter = charRepo.save(new Character(newCharacter, username));
+        responseCache.invalidateUser(username);
+        profiles.evict(username);
         log.debug("POST /users/{}/characters id='{}'", username, realCharacter.getClass());
         return realCharacter.id().toHexString();
     }
@@ -153,7 +188,8 @@ public class CharacterService {
             updated.modifiers(),
             updated.combat(),
             updated.passive(),
-            updated.actions()
+            updated.actions(),
+            character.version() // conservar del original
         );
 
         // Validar los campos manualmente
@@ -167,6 +203,9 @@ public class CharacterService {
 
         // Se debe hacer asi o MongoDB tratara de insertarlo como un nuevo documento
         charRepo.save(newCharacter);
+        responseCache.invalidateUser(username);
+        profiles.evict(username);
+        authors.evict(newCharacter.id());
         return new Character.PublicCharacter(newCharacter);
     }
 
@@ -179,5 +218,9 @@ public class CharacterService {
             throw new ResourceNotFoundException("Character", characterName);
         }
         charRepo.deleteCharacterById(deletedCharacter.id());
+        responseCache.invalidateUser(username);
+        profiles.evict(username);
+        authors.evict(deletedCharacter.id());
+        existence.evictCharacter(deletedCharacter.id());
     }
 }
@@ -0,0 +1,265 @@
+package tavernnet.service;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tavernnet.model.PostView;
+import tavernnet.repository.PostCountersRepository;
+import tavernnet.repository.PostCountersRepository.Counts;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Contadores de likes y comentarios repartidos en varias claves de Redis.
+ * <br/>
+ * Cuando un post se hace viral, todas las interacciones modifican el mismo
+ * contador. Para evitarlo, cada contador se divide en
+ * <code>counters.shards</code> claves de Redis y cada incremento se aplica a
+ * una al azar, de forma que la carga se reparte. Periódicamente, las claves se
+ * vacían y su suma se añade a los contadores del documento del post en
+ * MongoDB.
+ * <br/>
+ * Los contadores de MongoDB son por tanto el valor ya consolidado, y al leer
+ * los posts se les suma lo pendiente en Redis con un único <code>MGET</code>.
+ * <br/>
+ * Si Redis no está disponible, los incrementos se aplican directamente en
+ * MongoDB y las lecturas devuelven el valor consolidado.
+ */
+@Service
+@NullMarked
+public class CounterService {
+
+    private static final Logger log = LoggerFactory.getLogger(CounterService.class);
+    private static final String KEY_PREFIX = "counters:";
+    // Posts con incrementos pendientes de pasar a MongoDB
+    private static final String DIRTY_KEY = "counters:dirty";
+    // Número de posts que se consolidan en cada operación bulk
+    private static final int FLUSH_BATCH = 500;
+
+    public enum Counter {
+        LIKES("n_likes"),
+        COMMENTS("n_comments");
+
+        private final String field;
+
+        Counter(String field) {
+            this.field = field;
+        }
+    }
+
+    private final StringRedisTemplate redis;
+    private final PostCountersRepository countersRepo;
+
+    /** Número de claves en las que se reparte cada contador */
+    @Value("${counters.shards:8}")
+    private int shards;
+
+    @Autowired
+    public CounterService(StringRedisTemplate redis, PostCountersRepository countersRepo) {
+        this.redis = redis;
+        this.countersRepo = countersRepo;
+    }
+
+    public void increment(ObjectId postId, Counter counter, long delta) {
+        incrementAll(counter, Map.of(postId, delta));
+    }
+
+    /**
+     * Aplica varios incrementos del mismo contador en un único <i>pipeline</i>.
+     * @param deltas Incremento de cada post.
+     */
+    public void incrementAll(Counter counter, Map<ObjectId, ? extends Number> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                deltas.forEach((postId, delta) -> {
+                    int shard = ThreadLocalRandom.current().nextInt(shards);
+                    conn.incrBy(key(postId, counter, shard), delta.longValue());
+                    conn.sAdd(DIRTY_KEY, postId.toHexString());
+                });
+                return null;
+            });
+        } catch (DataAccessException e) {
+            // No perder el incremento: aplicarlo directamente sobre el post
+            log.warn("Could not increment {} counters in Redis: {}", counter.field, e.getMessage());
+            Map<ObjectId, Counts> direct = new HashMap<>();
+            deltas.forEach((postId, delta) -> direct.put(postId, counts(counter, delta.longValue())));
+            countersRepo.increment(direct);
+        }
+    }
+
+    /**
+     * @param posts Posts leídos de MongoDB.
+     * @return Los mismos posts, con los incrementos pendientes de consolidar
+     * sumados a sus contadores.
+     */
+    public List<PostView> withPending(List<PostView> posts) {
+        if (posts.isEmpty()) {
+            return posts;
+        }
+
+        Map<ObjectId, Counts> pending = pending(posts.stream().map(PostView::id).toList());
+        return posts.stream()
+            .map(post -> {
+                Counts delta = pending.getOrDefault(post.id(), Counts.ZERO);
+                return delta.isZero() ? post : post.withCounters(
+                    (int) Math.max(0, post.nLikes() + delta.likes()),
+                    (int) Math.max(0, post.nComments() + delta.comments())
+                );
+            })
+            .toList();
+    }
+
+    public PostView withPending(PostView post) {
+        return withPending(List.of(post)).getFirst();
+    }
+
+    /** @return Incrementos de un post pendientes de consolidar */
+    public Counts pending(ObjectId postId) {
+        return pending(List.of(postId)).getOrDefault(postId, Counts.ZERO);
+    }
+
+    /** Descarta los incrementos pendientes de un post borrado */
+    public void remove(ObjectId postId) {
+        try {
+            redis.delete(keys(List.of(postId)));
+            redis.opsForSet().remove(DIRTY_KEY, postId.toHexString());
+        } catch (DataAccessException e) {
+            log.warn("Could not remove counters of post {}: {}", postId, e.getMessage());
+        }
+    }
+
+    /**
+     * Pasa los incrementos pendientes a MongoDB. Varias instancias pueden
+     * ejecutarlo a la vez, ya que cada post se saca del conjunto de pendientes
+     * de forma atómica.
+     */
+    @Scheduled(
+        initialDelayString = "${counters.flush-interval:PT5S}",
+        fixedDelayString = "${counters.flush-interval:PT5S}"
+    )
+    public void flush() {
+        try {
+            // Si falla MongoDB, los posts vuelven a quedar pendientes: esperar
+            // al siguiente periodo en lugar de reintentar sin pausa
+            List<String> dirty;
+            boolean flushed = true;
+            while (flushed
+                && (dirty = redis.opsForSet().pop(DIRTY_KEY, FLUSH_BATCH)) != null
+                && !dirty.isEmpty()
+            ) {
+                flushed = flush(dirty.stream().filter(ObjectId::isValid).map(ObjectId::new).toList());
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not flush counters: {}", e.getMessage());
+        }
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    /** @return <code>false</code> si no se han podido escribir en MongoDB */
+    private boolean flush(List<ObjectId> postIds) {
+        // GETDEL es atómico: un incremento posterior se queda en Redis y vuelve
+        // a marcar el post como pendiente, por lo que no se pierde
+        List<String> keys = keys(postIds);
+        List<Object> values = redis.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            keys.forEach(conn::getDel);
+            return null;
+        });
+
+        Map<ObjectId, Counts> deltas = sum(postIds, values);
+        deltas.values().removeIf(Counts::isZero);
+        try {
+            countersRepo.increment(deltas);
+            log.debug("Flushed counters of {} posts", deltas.size());
+            return true;
+        } catch (DataAccessException e) {
+            // Devolver los incrementos a Redis para el siguiente intento
+            log.error("Could not flush counters of {} posts, retrying: {}", deltas.size(), e.getMessage());
+            Map<ObjectId, Long> likes = new HashMap<>();
+            Map<ObjectId, Long> comments = new HashMap<>();
+            deltas.forEach((postId, delta) -> {
+                likes.put(postId, delta.likes());
+                comments.put(postId, delta.comments());
+            });
+            incrementAll(Counter.LIKES, likes);
+            incrementAll(Counter.COMMENTS, comments);
+            return false;
+        }
+    }
+
+    /** Incrementos pendientes de cada post, con un único <code>MGET</code> */
+    private Map<ObjectId, Counts> pending(List<ObjectId> postIds) {
+        try {
+            List<String> values = redis.opsForValue().multiGet(keys(postIds));
+            return values == null ? Map.of() : sum(postIds, values);
+        } catch (DataAccessException e) {
+            log.warn("Could not read pending counters: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    /**
+     * @param values Valores de las claves, en el orden de {@link #keys}.
+     */
+    private Map<ObjectId, Counts> sum(List<ObjectId> postIds, List<?> values) {
+        Map<ObjectId, Counts> result = new HashMap<>();
+        int i = 0;
+        for (ObjectId postId : postIds) {
+            for (Counter counter : Counter.values()) {
+                long total = 0;
+                for (int shard = 0; shard < shards; shard++) {
+                    Object value = values.get(i++);
+                    if (value != null) {
+                        total += Long.parseLong(value.toString());
+                    }
+                }
+                result.merge(postId, counts(counter, total), Counts::plus);
+            }
+        }
+        return result;
+    }
+
+    /** Todas las claves de los posts: por post, por contador y por shard */
+    private List<String> keys(Collection<ObjectId> postIds) {
+        List<String> keys = new ArrayList<>(postIds.size() * Counter.values().length * shards);
+        for (ObjectId postId : postIds) {
+            for (Counter counter : Counter.values()) {
+                for (int shard = 0; shard < shards; shard++) {
+                    keys.add(key(postId, counter, shard));
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static String key(ObjectId postId, Counter counter, int shard) {
+        return KEY_PREFIX + postId.toHexString() + ":" + counter.field + ":" + shard;
+    }
+
+    private static Counts counts(Counter counter, long delta) {
+        return switch (counter) {
+            case LIKES -> new Counts(delta, 0);
+            case COMMENTS -> new Counts(0, delta);
+        };
+    }
+}
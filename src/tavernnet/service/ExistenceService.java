@@ -0,0 +1,142 @@
+package tavernnet.service;
+
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tavernnet.exception.ResourceNotFoundException;
+import tavernnet.repository.CharacterRepository;
+import tavernnet.repository.PostsRepository;
+import tavernnet.utils.LruCache;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Comprobaciones de que existen los posts y personajes sobre los que se
+ * escribe (likes, comentarios, etc.).
+ * <br/>
+ * Los que se han visto existir recientemente se guardan en una caché de vida
+ * corta, así que con un post muy activo las comprobaciones no llegan a la base
+ * de datos. Las que sí llegan se lanzan a la vez en hilos virtuales, de forma
+ * que comprobar el post y el personaje cuesta una sola ida y vuelta.
+ * <br/>
+ * Solo se guarda que algo existe, nunca que no existe: un post recién creado
+ * se encuentra siempre. Los borrados se descartan de la caché en esta
+ * instancia, y en el resto caducan en <code>existence.cache-ttl</code>.
+ */
+@Service
+@NullMarked
+public class ExistenceService {
+
+    private final PostsRepository postsRepo;
+    private final CharacterRepository charRepo;
+    private final LruCache<ObjectId, Boolean> posts;
+    private final LruCache<ObjectId, Boolean> characters;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Autowired
+    public ExistenceService(
+        PostsRepository postsRepo,
+        CharacterRepository charRepo,
+        @Value("${existence.cache-size:10000}") int cacheSize,
+        @Value("${existence.cache-ttl:PT5S}") Duration cacheTtl
+    ) {
+        this.postsRepo = postsRepo;
+        this.charRepo = charRepo;
+        this.posts = new LruCache<>(cacheSize, cacheTtl);
+        this.characters = new LruCache<>(cacheSize, cacheTtl);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /** @throws ResourceNotFoundException Si el post no existe. */
+    public void requirePost(ObjectId postId) throws ResourceNotFoundException {
+        if (!postExists(postId)) {
+            throw new ResourceNotFoundException("Post", String.valueOf(postId));
+        }
+    }
+
+    /** @throws ResourceNotFoundException Si el personaje no existe. */
+    public void requireCharacter(ObjectId characterId) throws ResourceNotFoundException {
+        if (!characterExists(characterId)) {
+            throw new ResourceNotFoundException("Character", String.valueOf(characterId));
+        }
+    }
+
+    /**
+     * Comprueba a la vez que existen el post y el personaje: si ninguno está
+     * en la caché, el post se consulta en un hilo virtual mientras el
+     * personaje se consulta en el actual.
+     * @throws ResourceNotFoundException Si alguno no existe (el post primero).
+     */
+    public void requirePostAndCharacter(
+        ObjectId postId,
+        ObjectId characterId
+    ) throws ResourceNotFoundException {
+        CompletableFuture<Boolean> post = posts.get(postId) != null
+            ? CompletableFuture.completedFuture(true)
+            : CompletableFuture.supplyAsync(() -> postExists(postId), executor);
+        boolean character = characterExists(characterId);
+
+        boolean postFound;
+        try {
+            postFound = post.join();
+        } catch (CompletionException e) {
+            // Propagar el error de la base de datos tal cual
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+
+        if (!postFound) {
+            throw new ResourceNotFoundException("Post", String.valueOf(postId));
+        }
+        if (!character) {
+            throw new ResourceNotFoundException("Character", String.valueOf(characterId));
+        }
+    }
+
+    public void evictPost(ObjectId postId) {
+        posts.remove(postId);
+    }
+
+    public void evictCharacter(ObjectId characterId) {
+        characters.remove(characterId);
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    private boolean postExists(ObjectId postId) {
+        return exists(posts, postId, () -> postsRepo.existsById(postId));
+    }
+
+    private boolean characterExists(ObjectId characterId) {
+        return exists(characters, characterId, () -> charRepo.existsById(characterId));
+    }
+
+    private static boolean exists(
+        LruCache<ObjectId, Boolean> cache,
+        ObjectId id,
+        BooleanSupplier query
+    ) {
+        if (cache.get(id) != null) {
+            return true;
+        }
+        boolean exists = query.getAsBoolean();
+        if (exists) {
+            cache.put(id, true);
+        }
+        return exists;
+    }
+}
@@ -0,0 +1,287 @@
+package tavernnet.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tavernnet.model.PostView;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reparto de los eventos del feed en directo (<code>GET /posts/stream</code>)
+ * a todos los clientes conectados por <i>Server-Sent Events</i>.
+ * <br/>
+ * Cada evento se serializa una sola vez y se añade al buffer de cada
+ * suscriptor, de tamaño <code>feed.stream.buffer-size</code>. Si un cliente
+ * lento lo llena, se descartan sus eventos más antiguos, de forma que nunca
+ * frena a los demás ni al que publica. Los buffers con eventos se vacían en
+ * hilos virtuales, y las conexiones sin actividad no ocupan ningún hilo (se
+ * usa el soporte asíncrono de los servlets).
+ * <br/>
+ * Para que los clientes de todas las instancias reciban todos los eventos, se
+ * publican también en el canal <code>feed:events</code> de Redis, y cada
+ * instancia reparte los que recibe de las demás.
+ * <br/>
+ * Métricas: <code>feed.stream.subscribers</code> y
+ * <code>feed.stream.dropped</code> (eventos descartados).
+ */
+@Service
+@NullMarked
+public class FeedHub implements MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(FeedHub.class);
+    private static final String CHANNEL = "feed:events";
+
+    // Nombres de los eventos
+    public static final String POST_EVENT = "post";
+    public static final String COUNTERS_EVENT = "counters";
+
+    /** Cambio en los contadores de un post */
+    public record CounterDelta(String post, long likes, long comments) {}
+
+    /** Evento ya serializado. Sin nombre, es un comentario para mantener viva la conexión */
+    private record Event(@Nullable String name, String data) {}
+    private static final Event HEARTBEAT = new Event(null, "");
+
+    /** Evento tal y como se envía por Redis */
+    private record Envelope(String origin, String name, String data) {}
+
+    private final StringRedisTemplate redis;
+    private final RedisConnectionFactory redisConnections;
+    private final ObjectMapper mapper;
+    private final MeterRegistry registry;
+    private final Counter dropped;
+
+    // Para ignorar los eventos de Redis publicados por esta misma instancia
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private @Nullable RedisMessageListenerContainer listener;
+
+    /** Eventos pendientes de enviar que se guardan por cliente */
+    @Value("${feed.stream.buffer-size:64}")
+    private int bufferSize;
+
+    /** Duración máxima de una conexión, tras la que el cliente reconecta */
+    @Value("${feed.stream.timeout:PT30M}")
+    private Duration timeout;
+
+    @Autowired
+    public FeedHub(
+        StringRedisTemplate redis,
+        RedisConnectionFactory redisConnections,
+        ObjectMapper mapper,
+        MeterRegistry registry
+    ) {
+        this.redis = redis;
+        this.redisConnections = redisConnections;
+        this.mapper = mapper;
+        this.registry = registry;
+        this.dropped = Counter.builder("feed.stream.dropped")
+            .description("Live feed events dropped because a client was too slow")
+            .register(registry);
+    }
+
+    @PostConstruct
+    void start() {
+        Gauge.builder("feed.stream.subscribers", subscribers, Set::size)
+            .description("Clients connected to the live feed")
+            .register(registry);
+
+        // Si Redis no está disponible, el contenedor reintenta la suscripción
+        // en segundo plano; mientras tanto, solo se reparten los eventos locales
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnections);
+        container.addMessageListener(this, new ChannelTopic(CHANNEL));
+        container.afterPropertiesSet();
+        container.start();
+        listener = container;
+    }
+
+    @PreDestroy
+    void stop() throws Exception {
+        if (listener != null) {
+            listener.destroy();
+        }
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        executor.shutdownNow();
+    }
+
+    /** @return Nueva conexión que recibirá los eventos a partir de ahora */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        subscribers.add(subscriber);
+
+        // Enviar algo de inmediato para que el cliente reciba las cabeceras
+        subscriber.offer(HEARTBEAT);
+        return emitter;
+    }
+
+    // ==== PUBLICACIÓN ========================================================
+
+    public void publishPost(PostView.PostResponse post) {
+        publish(POST_EVENT, post);
+    }
+
+    public void publishCounters(ObjectId postId, long likes, long comments) {
+        publish(COUNTERS_EVENT, new CounterDelta(postId.toHexString(), likes, comments));
+    }
+
+    /** Likes de un lote, un evento por post */
+    public void publishLikes(Map<ObjectId, Integer> deltas) {
+        deltas.forEach((postId, delta) -> {
+            if (delta != 0) {
+                publishCounters(postId, delta, 0);
+            }
+        });
+    }
+
+    private void publish(String name, Object data) {
+        try {
+            Event event = new Event(name, mapper.writeValueAsString(data));
+            deliver(event);
+
+            // Enviar a las demás instancias sin hacer esperar al que publica
+            String message = mapper.writeValueAsString(new Envelope(instanceId, name, event.data()));
+            executor.execute(() -> {
+                try {
+                    redis.convertAndSend(CHANNEL, message);
+                } catch (DataAccessException e) {
+                    log.warn("Could not publish feed event to Redis: {}", e.getMessage());
+                }
+            });
+        } catch (JacksonException e) {
+            log.error("Could not serialize feed event {}: {}", name, e.getMessage());
+        }
+    }
+
+    /** Evento publicado en Redis por otra instancia */
+    @Override
+    public void onMessage(Message message, byte @Nullable [] pattern) {
+        try {
+            Envelope envelope = mapper.readValue(message.getBody(), Envelope.class);
+            if (!instanceId.equals(envelope.origin())) {
+                deliver(new Event(envelope.name(), envelope.data()));
+            }
+        } catch (JacksonException e) {
+            log.warn("Ignoring malformed feed event from Redis: {}", e.getMessage());
+        }
+    }
+
+    /** Mantiene vivas las conexiones y detecta los clientes desconectados */
+    @Scheduled(
+        initialDelayString = "${feed.stream.heartbeat:PT30S}",
+        fixedDelayString = "${feed.stream.heartbeat:PT30S}"
+    )
+    public void heartbeat() {
+        deliver(HEARTBEAT);
+    }
+
+    private void deliver(Event event) {
+        subscribers.forEach(subscriber -> subscriber.offer(event));
+    }
+
+    // ==== SUSCRIPTORES =======================================================
+
+    /** Cliente conectado, con su buffer de eventos pendientes */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        // Protegidos por el propio suscriptor
+        private final ArrayDeque<Event> buffer = new ArrayDeque<>();
+        private boolean draining = false;
+        private boolean closed = false;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        /** Añade el evento y, si nadie lo está haciendo ya, vacía el buffer */
+        void offer(Event event) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (buffer.size() >= bufferSize) {
+                    buffer.pollFirst();
+                    dropped.increment();
+                }
+                buffer.addLast(event);
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            executor.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                Event event;
+                synchronized (this) {
+                    event = buffer.pollFirst();
+                    if (event == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+
+                try {
+                    if (event.name() == null) {
+                        emitter.send(SseEmitter.event().comment(event.data()));
+                    } else {
+                        emitter.send(SseEmitter.event()
+                            .name(event.name())
+                            .data(event.data(), MediaType.APPLICATION_JSON));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // El cliente se ha desconectado
+                    close();
+                    emitter.completeWithError(e);
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                buffer.clear();
+            }
+            subscribers.remove(this);
+        }
+    }
+}
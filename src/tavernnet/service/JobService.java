@@ -0,0 +1,374 @@
+package tavernnet.service;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tavernnet.exception.ResourceNotFoundException;
+import tavernnet.model.Job;
+import tavernnet.repository.JobsRepository;
+import tavernnet.repository.LikesRepository;
+import tavernnet.repository.LikesRepository.Like;
+import tavernnet.repository.LikesRepository.LikeWrite;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Tareas en segundo plano persistentes.
+ * <br/>
+ * Periódicamente se toman las tareas pendientes de la colección
+ * <code>jobs</code> y se ejecutan. El trabajo se hace en lotes de
+ * <code>jobs.batch-size</code> documentos, con una pausa de
+ * <code>jobs.throttle</code> entre ellos para no saturar la base de datos, y
+ * tras cada lote se guarda el progreso y se renueva el <i>lease</i>. Si el
+ * servidor se cae a mitad, la tarea se vuelve a tomar cuando el lease caduca;
+ * como todos los pasos son idempotentes, basta con repetirla desde el
+ * principio.
+ * <br/>
+ * Al repetir un borrado en cascada, solo se vuelve a leer lo que aún no se ha
+ * borrado, por lo que continúa donde se quedó.
+ * <br/>
+ * Otras instancias pueden seguir encontrando un post o un personaje borrado
+ * en su caché de existencia (ver {@link ExistenceService}) y aceptar likes y
+ * comentarios que se escriben después de la cascada. Por eso, la de un post no
+ * termina hasta pasado <code>jobs.sweep-after</code> desde que se creó, y la
+ * de un usuario hasta pasado ese tiempo desde que borró su último personaje:
+ * si acaba antes, se repite una vez pasado ese tiempo.
+ */
+@Service
+@NullMarked
+public class JobService {
+
+    private static final Logger log = LoggerFactory.getLogger(JobService.class);
+
+    private final JobsRepository jobsRepo;
+    private final LikesRepository likesRepo;
+    private final CounterService counters;
+    private final LikeIndexService likeIndex;
+    private final PostCleanupService postCleanup;
+    private final AuthorService authors;
+    private final ExistenceService existence;
+    private final SessionService sessions;
+    private final UsernameIndexService usernameIndex;
+    private final ResponseCacheService responseCache;
+    private final ProfileService profiles;
+
+    /** Documentos que se borran en cada lote */
+    @Value("${jobs.batch-size:500}")
+    private int batchSize;
+
+    /** Pausa entre lotes */
+    @Value("${jobs.throttle:PT0.05S}")
+    private Duration throttle;
+
+    /** Tiempo sin renovar tras el que se considera que el trabajador ha caído */
+    @Value("${jobs.lease:PT1M}")
+    private Duration lease;
+
+    /** Intentos antes de marcar la tarea como fallida */
+    @Value("${jobs.max-attempts:5}")
+    private int maxAttempts;
+
+    /** Tiempo tras el que se repite la cascada de un post, por lo que llegue tarde */
+    @Value("${jobs.sweep-after:PT30S}")
+    private Duration sweepAfter;
+
+    @Autowired
+    public JobService(
+        JobsRepository jobsRepo,
+        LikesRepository likesRepo,
+        CounterService counters,
+        LikeIndexService likeIndex,
+        PostCleanupService postCleanup,
+        AuthorService authors,
+        ExistenceService existence,
+        SessionService sessions,
+        UsernameIndexService usernameIndex,
+        ResponseCacheService responseCache,
+        ProfileService profiles
+    ) {
+        this.jobsRepo = jobsRepo;
+        this.likesRepo = likesRepo;
+        this.counters = counters;
+        this.likeIndex = likeIndex;
+        this.postCleanup = postCleanup;
+        this.authors = authors;
+        this.existence = existence;
+        this.sessions = sessions;
+        this.usernameIndex = usernameIndex;
+        this.responseCache = responseCache;
+        this.profiles = profiles;
+    }
+
+    /**
+     * Crea una tarea, que se ejecutará en segundo plano.
+     * @param submitter Usuario que la pide.
+     */
+    public Job submit(Job.Type type, String target, String submitter) {
+        Job job = jobsRepo.create(type, target, submitter, null);
+        log.info("Submitted job {} {} for '{}' by {}", job.id(), type, target, submitter);
+        return job;
+    }
+
+    /**
+     * Crea una tarea que no se ejecutará hasta llamar a {@link #start}. Sirve
+     * para guardarla antes de borrar lo que la origina: si el servidor se cae
+     * antes de empezarla, se ejecuta igualmente cuando pasa un lease, y la
+     * propia tarea termina el borrado.
+     */
+    public Job hold(Job.Type type, String target, String submitter) {
+        Job job = jobsRepo.create(type, target, submitter, lease);
+        log.info("Submitted held job {} {} for '{}' by {}", job.id(), type, target, submitter);
+        return job;
+    }
+
+    /** Permite ejecutar ya una tarea creada con {@link #hold} */
+    public void start(Job job) {
+        jobsRepo.release(job.id(), Duration.ZERO, null);
+    }
+
+    /** Descarta una tarea creada con {@link #hold} que ya no hace falta */
+    public void cancel(Job job) {
+        jobsRepo.delete(job.id());
+        log.info("Cancelled job {}", job.id());
+    }
+
+    /** @return Si hay una tarea sin terminar de ese tipo sobre el recurso */
+    public boolean isActive(Job.Type type, String target) {
+        return jobsRepo.existsActive(type, target);
+    }
+
+    /** @return Cuáles de los recursos tienen una tarea sin terminar de ese tipo */
+    public Set<String> activeTargets(Job.Type type, Collection<String> targets) {
+        return targets.isEmpty() ? Set.of() : jobsRepo.findActiveTargets(type, targets);
+    }
+
+    /**
+     * @param id Identificador de la tarea.
+     * @return Estado y progreso de la tarea.
+     * @throws ResourceNotFoundException Si la tarea no existe.
+     */
+    public Job getJob(ObjectId id) throws ResourceNotFoundException {
+        return jobsRepo.findById(id)
+            .orElseThrow(() -> new ResourceNotFoundException("Job", String.valueOf(id)));
+    }
+
+    /** Ejecuta las tareas pendientes, de una en una */
+    @Scheduled(
+        initialDelayString = "${jobs.poll-interval:PT1S}",
+        fixedDelayString = "${jobs.poll-interval:PT1S}"
+    )
+    public void runPending() {
+        try {
+            Optional<Job> job;
+            while (!Thread.currentThread().isInterrupted()
+                && (job = jobsRepo.claimNext(lease)).isPresent()
+            ) {
+                run(job.get());
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not claim pending jobs: {}", e.getMessage());
+        }
+    }
+
+    // ==== EJECUCIÓN ==========================================================
+
+    private void run(Job job) {
+        log.info("Running job {} {} for '{}' (attempt {})", job.id(), job.type(), job.target(), job.attempts());
+        try {
+            // Momento desde el que se cuenta jobs.sweep-after para repetirla
+            LocalDateTime sweepFrom = switch (job.type()) {
+                case POST_CASCADE -> {
+                    runPostCascade(job);
+                    yield job.createdAt();
+                }
+                case USER_CASCADE -> runUserCascade(job);
+            };
+
+            Duration untilSweep = sweepFrom == null
+                ? Duration.ZERO
+                : Duration.between(LocalDateTime.now(), sweepFrom.plus(sweepAfter));
+            if (untilSweep.isPositive()) {
+                jobsRepo.release(job.id(), untilSweep, null);
+                log.info("Job {} will sweep again in {} ms", job.id(), untilSweep.toMillis());
+            } else {
+                jobsRepo.finish(job.id(), Job.Status.DONE, null);
+                log.info("Finished job {}", job.id());
+            }
+
+        } catch (RuntimeException e) {
+            // Errores de MongoDB, pero también datos inesperados (un target
+            // que no es un ObjectId, un campo de otro tipo...): reintentar
+            // pasado un lease, salvo que ya se haya intentado demasiado
+            String reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (job.attempts() >= maxAttempts) {
+                log.error("Job {} failed after {} attempts: {}", job.id(), job.attempts(), reason, e);
+                jobsRepo.finish(job.id(), Job.Status.FAILED, reason);
+            } else {
+                log.warn("Job {} failed, retrying: {}", job.id(), reason);
+                jobsRepo.release(job.id(), lease, reason);
+            }
+
+        } catch (InterruptedException e) {
+            // Se está cerrando la aplicación: la tarea sigue pendiente
+            Thread.currentThread().interrupt();
+            jobsRepo.release(job.id(), Duration.ZERO, null);
+        }
+    }
+
+    /**
+     * Borra los comentarios y likes de un post. Si el servidor se cayó antes
+     * de borrar el propio post, lo borra primero.
+     */
+    private void runPostCascade(Job job) throws InterruptedException {
+        ObjectId postId = new ObjectId(job.target());
+        Document post = jobsRepo.findAndDelete("posts", postId);
+        if (post != null) {
+            postCleanup.forget(postId, post.getObjectId("author"));
+        }
+        purge(job, "comments", "post", postId);
+        purge(job, "likes", "post", postId);
+    }
+
+    /**
+     * Borra los personajes de un usuario. Antes borra lo que depende de cada
+     * uno, y el personaje al final, para que al repetir la tarea se vuelva a
+     * encontrar lo que falte. Si el servidor se cayó antes de borrar el
+     * usuario o de cerrar sus sesiones, lo termina primero.
+     * <br/>
+     * Como con los posts, otras instancias pueden seguir aceptando likes,
+     * comentarios y posts de un personaje borrado mientras lo tengan en su
+     * caché de existencia. Por eso se guardan los personajes borrados y, en
+     * cada ejecución, se vuelve a borrar lo que dependa de los de las
+     * anteriores.
+     * @return Cuándo se borró el último personaje, o <code>null</code> si no
+     * tenía ninguno.
+     */
+    private @Nullable LocalDateTime runUserCascade(Job job) throws InterruptedException {
+        String username = job.target();
+        if (jobsRepo.findAndDelete("users", username) != null) {
+            log.info("Job {} deleted user '{}'", job.id(), username);
+        }
+        // Todo esto es idempotente, así que se repite siempre
+        sessions.revokeAll(username);
+        usernameIndex.remove(username);
+        responseCache.invalidateUser(username);
+        profiles.evict(username);
+
+        // Lo que haya llegado tarde de los personajes borrados antes
+        List<ObjectId> purged = job.purgedCharacters() != null ? job.purgedCharacters() : List.of();
+        for (ObjectId characterId : purged) {
+            purgeLikesBy(job, characterId);
+            purgeCommentsBy(job, characterId);
+            purgePostsBy(job, characterId);
+        }
+
+        LocalDateTime purgedAt = job.purgedAt();
+        List<Document> characters;
+        do {
+            characters = jobsRepo.findBatch("characters", "user", username, batchSize);
+            for (Document character : characters) {
+                ObjectId characterId = character.getObjectId("_id");
+                purgeLikesBy(job, characterId);
+                purgeCommentsBy(job, characterId);
+                purgePostsBy(job, characterId);
+
+                // Antes de borrarlo: si no, tras una caída no se encontraría
+                jobsRepo.addPurgedCharacter(job.id(), characterId);
+                purgedAt = LocalDateTime.now();
+                jobsRepo.deleteByIds("characters", List.of(characterId));
+                jobsRepo.progress(job.id(), "characters", 1, lease);
+                authors.evict(characterId);
+                existence.evictCharacter(characterId);
+            }
+        } while (characters.size() == batchSize);
+        return purgedAt;
+    }
+
+    /** Quita los likes de un personaje, descontándolos de cada post */
+    private void purgeLikesBy(Job job, ObjectId characterId) throws InterruptedException {
+        List<Document> batch;
+        do {
+            batch = jobsRepo.findBatch("likes", "author", characterId, batchSize, "post");
+            List<Like> likes = batch.stream()
+                .map(like -> new Like(like.getObjectId("_id"), like.getObjectId("post"), characterId))
+                .toList();
+            LikesRepository.BatchResult result = likesRepo.removeBatch(likes);
+            counters.incrementAll(CounterService.Counter.LIKES, result.deltas());
+            List<LikeWrite> writes = likes.stream()
+                .filter(like -> !result.failed().containsKey(like.id()))
+                .map(like -> new LikeWrite(like.post(), characterId, false))
+                .toList();
+            likeIndex.apply(writes);
+            jobsRepo.progress(job.id(), "likes", writes.size(), lease);
+            if (!result.failed().isEmpty()) {
+                // Se vuelven a encontrar al repetir la tarea
+                throw new IllegalStateException("Could not remove " + result.failed().size()
+                    + " likes: " + result.failed().values().iterator().next());
+            }
+            Thread.sleep(throttle);
+        } while (batch.size() == batchSize);
+    }
+
+    /** Borra los comentarios de un personaje, descontándolos de cada post */
+    private void purgeCommentsBy(Job job, ObjectId characterId) throws InterruptedException {
+        List<Document> batch;
+        do {
+            batch = jobsRepo.findBatch("comments", "author", characterId, batchSize, "post");
+            Map<ObjectId, Integer> deltas = new HashMap<>();
+            for (Document comment : batch) {
+                deltas.merge(comment.getObjectId("post"), -1, Integer::sum);
+            }
+            long deleted = jobsRepo.deleteByIds("comments", batch.stream().map(c -> c.get("_id")).toList());
+            counters.incrementAll(CounterService.Counter.COMMENTS, deltas);
+            jobsRepo.progress(job.id(), "comments", deleted, lease);
+            Thread.sleep(throttle);
+        } while (batch.size() == batchSize);
+    }
+
+    /**
+     * Borra los posts de un personaje. Sus comentarios y likes los borra la
+     * tarea de cada post, igual que al borrar un post suelto, que se crea
+     * antes de borrarlo.
+     */
+    private void purgePostsBy(Job job, ObjectId characterId) throws InterruptedException {
+        List<Document> batch;
+        do {
+            batch = jobsRepo.findBatch("posts", "author", characterId, batchSize);
+            for (Document post : batch) {
+                ObjectId postId = post.getObjectId("_id");
+                Job postJob = jobsRepo.create(Job.Type.POST_CASCADE, postId.toHexString(), job.submitter(), null);
+                log.info("Submitted job {} {} for '{}' from job {}", postJob.id(), postJob.type(), postId, job.id());
+                jobsRepo.deleteByIds("posts", List.of(postId));
+                jobsRepo.progress(job.id(), "posts", 1, lease);
+                postCleanup.forget(postId, characterId);
+            }
+            Thread.sleep(throttle);
+        } while (batch.size() == batchSize);
+    }
+
+    /** Borra todos los documentos de la colección con el valor dado, en lotes */
+    private void purge(Job job, String collection, String field, Object value)
+            throws InterruptedException {
+        long deleted;
+        do {
+            deleted = jobsRepo.deleteBatch(collection, field, value, batchSize);
+            jobsRepo.progress(job.id(), collection, deleted, lease);
+            Thread.sleep(throttle);
+        } while (deleted == batchSize);
+    }
+}
@@ -0,0 +1,344 @@
+package tavernnet.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import tavernnet.repository.LikesRepository;
+import tavernnet.repository.LikesRepository.LikeWrite;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Índice en memoria de qué personajes han dado like a cada post, para saber
+ * si el usuario actual ha dado like a los posts de una página sin consultar
+ * la base de datos.
+ * <br/>
+ * Cada personaje se codifica como un entero (diccionario
+ * <code>ObjectId → int</code>), y los que han dado like a un post se guardan
+ * en un bitmap comprimido (<i>Roaring bitmap</i>), que ocupa mucho menos que
+ * un conjunto de <code>ObjectId</code>.
+ * <br/>
+ * El índice se carga de la colección <code>likes</code> al arrancar y se
+ * mantiene con los lotes que escribe {@link LikeIngestionService}. Los bitmaps
+ * nunca se modifican una vez publicados: cada cambio crea una copia, así que
+ * se pueden leer sin bloqueos. Hasta que termina la carga, se consulta MongoDB
+ * (una sola consulta por página).
+ * <br/>
+ * Para que todas las instancias tengan el mismo índice, cada cambio se publica
+ * también en el canal <code>likes:index</code> de Redis, y cada instancia
+ * aplica los que recibe de las demás. Los mensajes que se pierden mientras no
+ * hay conexión con Redis no se reenvían, así que cada vez que se recupera la
+ * suscripción el índice se vuelve a cargar (consultando MongoDB mientras
+ * tanto).
+ * <br/>
+ * Métricas: <code>likes.index.bytes</code>, <code>likes.index.posts</code> y
+ * <code>likes.index.characters</code>.
+ */
+@Service
+@NullMarked
+public class LikeIndexService implements MessageListener, SubscriptionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(LikeIndexService.class);
+    private static final String CHANNEL = "likes:index";
+    // Espera antes de reintentar la carga si falla MongoDB
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+
+    /** Cambios tal y como se envían por Redis */
+    private record Envelope(String origin, List<Change> likes, List<String> removedPosts) {}
+    private record Change(String post, String author, boolean like) {}
+
+    private final LikesRepository likesRepo;
+    private final StringRedisTemplate redis;
+    private final RedisConnectionFactory redisConnections;
+    private final ObjectMapper mapper;
+
+    // Para ignorar los cambios de Redis publicados por esta misma instancia
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ExecutorService publisher = Executors.newVirtualThreadPerTaskExecutor();
+    private @Nullable RedisMessageListenerContainer listener;
+
+    // Diccionario de personajes. Los códigos nunca se reutilizan
+    private final Map<ObjectId, Integer> characterCodes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextCode = new AtomicInteger();
+    private final Map<ObjectId, RoaringBitmap> likers = new ConcurrentHashMap<>();
+
+    // Cambios recibidos durante la carga, que se aplican al terminar. Es
+    // null cuando el índice ya está listo
+    private final Object warmUpLock = new Object();
+    private @Nullable List<LikeWrite> duringWarmUp = new ArrayList<>();
+    // Cargas pedidas desde que empezó la actual. Si llega otra mientras se
+    // carga, la carga se repite
+    private final AtomicInteger loadRequests = new AtomicInteger();
+    private volatile boolean started = false;
+
+    @Autowired
+    public LikeIndexService(
+        LikesRepository likesRepo,
+        StringRedisTemplate redis,
+        RedisConnectionFactory redisConnections,
+        ObjectMapper mapper,
+        MeterRegistry registry
+    ) {
+        this.likesRepo = likesRepo;
+        this.redis = redis;
+        this.redisConnections = redisConnections;
+        this.mapper = mapper;
+
+        Gauge.builder("likes.index.bytes", likers, LikeIndexService::sizeInBytes)
+            .description("Memory used by the like bitmaps")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("likes.index.posts", likers, Map::size)
+            .description("Posts with at least one like in the index")
+            .register(registry);
+        Gauge.builder("likes.index.characters", characterCodes, Map::size)
+            .description("Characters in the index dictionary")
+            .register(registry);
+    }
+
+    @PostConstruct
+    void subscribe() {
+        // Si Redis no está disponible, el contenedor reintenta la suscripción
+        // en segundo plano, y al conseguirla se vuelve a cargar el índice
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnections);
+        container.addMessageListener(this, new ChannelTopic(CHANNEL));
+        container.afterPropertiesSet();
+        container.start();
+        listener = container;
+    }
+
+    @PreDestroy
+    void stop() throws Exception {
+        if (listener != null) {
+            listener.destroy();
+        }
+        publisher.shutdownNow();
+    }
+
+    /** La carga se hace en segundo plano para no retrasar el arranque */
+    @EventListener(ApplicationReadyEvent.class)
+    void startWarmUp() {
+        started = true;
+        requestLoad();
+    }
+
+    /**
+     * @param characterId Personaje que consulta los posts.
+     * @param postIds Posts a comprobar.
+     * @return Cuáles de los posts tienen un like del personaje.
+     */
+    public Set<ObjectId> likedBy(ObjectId characterId, Collection<ObjectId> postIds) {
+        if (!isReady()) {
+            return likesRepo.findLikedAmong(characterId, postIds);
+        }
+
+        Integer code = characterCodes.get(characterId);
+        if (code == null) {
+            return Set.of();
+        }
+
+        Set<ObjectId> liked = new HashSet<>();
+        for (ObjectId postId : postIds) {
+            RoaringBitmap bitmap = likers.get(postId);
+            if (bitmap != null && bitmap.contains(code)) {
+                liked.add(postId);
+            }
+        }
+        return liked;
+    }
+
+    /** Aplica un lote de likes ya escritos en la base de datos */
+    public void apply(Collection<LikeWrite> writes) {
+        applyLocally(writes);
+        broadcast(writes.stream()
+            .map(w -> new Change(w.post().toHexString(), w.author().toHexString(), w.like()))
+            .toList(), List.of());
+    }
+
+    /** Olvida los likes de un post borrado */
+    public void remove(ObjectId postId) {
+        likers.remove(postId);
+        broadcast(List.of(), List.of(postId.toHexString()));
+    }
+
+    /** Cambios publicados en Redis por otra instancia */
+    @Override
+    public void onMessage(Message message, byte @Nullable [] pattern) {
+        try {
+            Envelope envelope = mapper.readValue(message.getBody(), Envelope.class);
+            if (instanceId.equals(envelope.origin())) {
+                return;
+            }
+            applyLocally(envelope.likes().stream()
+                .map(c -> new LikeWrite(new ObjectId(c.post()), new ObjectId(c.author()), c.like()))
+                .toList());
+            envelope.removedPosts().forEach(post -> likers.remove(new ObjectId(post)));
+        } catch (JacksonException | IllegalArgumentException e) {
+            log.warn("Ignoring malformed like index change from Redis: {}", e.getMessage());
+        }
+    }
+
+    /** Tras (re)conectar con Redis se pueden haber perdido cambios */
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+        if (started) {
+            log.info("Subscribed to {}, reloading like index", CHANNEL);
+            requestLoad();
+        }
+    }
+
+    public boolean isReady() {
+        synchronized (warmUpLock) {
+            return duringWarmUp == null;
+        }
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    /** Carga el índice de nuevo, consultando MongoDB mientras tanto */
+    private void requestLoad() {
+        synchronized (warmUpLock) {
+            if (duringWarmUp == null) {
+                duringWarmUp = new ArrayList<>();
+            }
+        }
+        if (loadRequests.getAndIncrement() == 0) {
+            Thread.ofVirtual().name("like-index-warmup").start(this::warmUp);
+        }
+    }
+
+    private void warmUp() {
+        while (true) {
+            int requests = loadRequests.get();
+            try {
+                long start = System.nanoTime();
+                Map<ObjectId, RoaringBitmap> loaded = new HashMap<>();
+                try (Stream<LikeWrite> likes = likesRepo.streamAll()) {
+                    likes.forEach(like -> loaded
+                        .computeIfAbsent(like.post(), post -> new RoaringBitmap())
+                        .add(code(like.author()))
+                    );
+                }
+                loaded.values().forEach(RoaringBitmap::runOptimize);
+
+                // Publicar el índice y aplicar lo que haya llegado mientras
+                synchronized (warmUpLock) {
+                    likers.clear();
+                    likers.putAll(loaded);
+                    applyNow(duringWarmUp == null ? List.of() : duringWarmUp);
+                    if (loadRequests.compareAndSet(requests, 0)) {
+                        duringWarmUp = null;
+                    } else {
+                        // Se ha pedido otra carga mientras tanto
+                        duringWarmUp = new ArrayList<>();
+                        continue;
+                    }
+                }
+                log.info("Like index loaded: {} posts in {} ms",
+                    loaded.size(), Duration.ofNanos(System.nanoTime() - start).toMillis());
+                return;
+
+            } catch (DataAccessException e) {
+                log.warn("Could not load like index, retrying: {}", e.getMessage());
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    loadRequests.set(0);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void applyLocally(Collection<LikeWrite> writes) {
+        synchronized (warmUpLock) {
+            if (duringWarmUp != null) {
+                duringWarmUp.addAll(writes);
+                return;
+            }
+        }
+        applyNow(writes);
+    }
+
+    /** Envía los cambios a las demás instancias sin hacer esperar al que escribe */
+    private void broadcast(List<Change> likes, List<String> removedPosts) {
+        if (likes.isEmpty() && removedPosts.isEmpty()) {
+            return;
+        }
+        try {
+            String message = mapper.writeValueAsString(new Envelope(instanceId, likes, removedPosts));
+            publisher.execute(() -> {
+                try {
+                    redis.convertAndSend(CHANNEL, message);
+                } catch (DataAccessException e) {
+                    log.warn("Could not publish like index changes to Redis: {}", e.getMessage());
+                }
+            });
+        } catch (JacksonException e) {
+            log.error("Could not serialize like index changes: {}", e.getMessage());
+        }
+    }
+
+    private void applyNow(Collection<LikeWrite> writes) {
+        Map<ObjectId, List<LikeWrite>> byPost = writes.stream()
+            .collect(Collectors.groupingBy(LikeWrite::post));
+
+        // Copia, modificación y reemplazo atómico del bitmap de cada post
+        byPost.forEach((postId, changes) -> likers.compute(postId, (id, current) -> {
+            RoaringBitmap bitmap = current == null ? new RoaringBitmap() : current.clone();
+            for (LikeWrite change : changes) {
+                if (change.like()) {
+                    bitmap.add(code(change.author()));
+                } else {
+                    bitmap.remove(code(change.author()));
+                }
+            }
+            return bitmap.isEmpty() ? null : bitmap;
+        }));
+    }
+
+    private int code(ObjectId characterId) {
+        return characterCodes.computeIfAbsent(characterId, id -> nextCode.getAndIncrement());
+    }
+
+    private static double sizeInBytes(Map<ObjectId, RoaringBitmap> likers) {
+        return likers.values().stream().mapToLong(RoaringBitmap::getLongSizeInBytes).sum();
+    }
+}
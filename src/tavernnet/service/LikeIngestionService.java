@@ -0,0 +1,443 @@
+package tavernnet.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.stereotype.Service;
+import tavernnet.repository.LikesRepository;
+import tavernnet.repository.LikesRepository.Like;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cola de escritura de likes.
+ * <br/>
+ * En lugar de escribir cada like en MongoDB según llega, se encolan en memoria
+ * y un hilo los escribe en lotes con operaciones <i>bulk</i>: cuando hay
+ * <code>likes.batch-size</code> pendientes o, como mucho, cada
+ * <code>likes.flush-interval</code>. Los cambios sobre el mismo par
+ * <code>(post, author)</code> se combinan, quedándose solo el último, por lo
+ * que dar y quitar un like repetidamente no llega a la base de datos.
+ * <br/>
+ * Cada cambio devuelve un futuro que se completa cuando se ha escrito, para
+ * los clientes que necesiten esperar a que sea persistente.
+ * <br/>
+ * Las escrituras son <i>bulk</i> desordenadas, así que solo se reintentan
+ * los cambios cuya operación ha fallado. Si un lote falla sin saber qué se ha
+ * aplicado (p. ej. por un timeout), se comprueba antes del siguiente intento
+ * qué likes existen, para que ninguna variación de <code>n_likes</code> se
+ * pierda ni se cuente dos veces. Si MongoDB no está disponible, los cambios se
+ * reintentan hasta que vuelva; si fallan por otro motivo, el que falla
+ * <code>likes.max-attempts</code> veces se descarta. Los que esperan a un
+ * cambio solo reciben un error si se descarta.
+ * <br/>
+ * Los contadores se suman aparte, una vez escritos los likes: si falla, solo
+ * se reintenta la suma. El índice de likes, las tendencias y el feed en
+ * directo no son críticos, y un fallo en ellos no hace reescribir los likes.
+ * <br/>
+ * Métricas: <code>likes.queue.depth</code> (pares pendientes),
+ * <code>likes.flush.latency</code>, <code>likes.flush.size</code> y
+ * <code>likes.dropped</code> (cambios descartados).
+ */
+@Service
+@NullMarked
+public class LikeIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(LikeIngestionService.class);
+    // Espera tras un fallo de MongoDB antes de reintentar el lote
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    private final LikesRepository likesRepo;
+    private final TrendingService trending;
+    private final CounterService counters;
+    private final LikeIndexService likeIndex;
+    private final FeedHub liveFeed;
+    private final MeterRegistry registry;
+    private final Timer flushLatency;
+    private final DistributionSummary flushSize;
+    private final Counter dropped;
+
+    /** Número de likes pendientes a partir del cual se escriben sin esperar */
+    @Value("${likes.batch-size:500}")
+    private int batchSize;
+
+    /** Tiempo máximo que un like puede estar pendiente */
+    @Value("${likes.flush-interval:PT0.01S}")
+    private Duration flushInterval;
+
+    /** Intentos de escribir un cambio que falla por sí solo antes de descartarlo */
+    @Value("${likes.max-attempts:5}")
+    private int maxAttempts;
+
+    // Protege pending: los hilos de las peticiones añaden y el de escritura
+    // se lleva el mapa completo
+    private final Object lock = new Object();
+    private Map<Key, Pending> pending = new LinkedHashMap<>();
+    private volatile boolean running = true;
+    // Solo las usa el hilo de escritura: variaciones de n_likes que no se han
+    // podido sumar y escrituras de las que no se conoce el resultado, por el
+    // _id del like
+    private final Map<ObjectId, Integer> unappliedDeltas = new HashMap<>();
+    private final Map<ObjectId, Uncertain> uncertain = new HashMap<>();
+    private final Thread flusher = Thread.ofPlatform()
+        .name("like-flusher")
+        .daemon()
+        .unstarted(this::run);
+
+    @Autowired
+    public LikeIngestionService(
+        LikesRepository likesRepo,
+        TrendingService trending,
+        CounterService counters,
+        LikeIndexService likeIndex,
+        FeedHub liveFeed,
+        MeterRegistry registry
+    ) {
+        this.likesRepo = likesRepo;
+        this.trending = trending;
+        this.counters = counters;
+        this.likeIndex = likeIndex;
+        this.liveFeed = liveFeed;
+        this.registry = registry;
+        this.flushLatency = Timer.builder("likes.flush.latency")
+            .description("Time to write a batch of likes")
+            .register(registry);
+        this.flushSize = DistributionSummary.builder("likes.flush.size")
+            .description("Likes written per batch")
+            .register(registry);
+        this.dropped = Counter.builder("likes.dropped")
+            .description("Like changes discarded after likes.max-attempts failed writes")
+            .register(registry);
+    }
+
+    @PostConstruct
+    void start() {
+        Gauge.builder("likes.queue.depth", this, LikeIngestionService::depth)
+            .description("Likes pending to be written")
+            .register(registry);
+        flusher.start();
+    }
+
+    /** Escribe los likes pendientes antes de cerrar la aplicación */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        flusher.join();
+    }
+
+    /**
+     * Encola un cambio de like.
+     * @param like <code>true</code> para dar like, <code>false</code> para
+     *             quitarlo.
+     * @return Futuro que se completa cuando el cambio se ha escrito en MongoDB.
+     */
+    public CompletableFuture<Void> enqueue(ObjectId postId, ObjectId authorId, boolean like) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        synchronized (lock) {
+            Pending entry = pending.computeIfAbsent(new Key(postId, authorId), key -> new Pending());
+            entry.like = like;
+            entry.waiters.add(durable);
+
+            // Despertar al hilo de escritura para que empiece a contar el
+            // intervalo, o para que escriba ya si el lote está completo
+            if (pending.size() == 1 || pending.size() >= batchSize) {
+                lock.notifyAll();
+            }
+        }
+        return durable;
+    }
+
+    public int depth() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    // ==== HILO DE ESCRITURA ==================================================
+
+    private void run() {
+        boolean stopping = false;
+        while (!stopping) {
+            Map<Key, Pending> batch;
+            synchronized (lock) {
+                try {
+                    while (running && pending.isEmpty() && !hasBacklog()) {
+                        lock.wait();
+                    }
+                    if (running && pending.size() < batchSize) {
+                        lock.wait(Math.max(1, flushInterval.toMillis()));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+                stopping = !running;
+                batch = pending;
+                pending = new LinkedHashMap<>();
+            }
+
+            if ((!batch.isEmpty() || hasBacklog()) && !flush(batch) && !stopping) {
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stopping = true;
+                }
+            }
+        }
+    }
+
+    /** Si quedan contadores o escrituras de lotes anteriores por resolver */
+    private boolean hasBacklog() {
+        return !unappliedDeltas.isEmpty() || !uncertain.isEmpty();
+    }
+
+    /** @return <code>false</code> si algo no se ha podido escribir */
+    private boolean flush(Map<Key, Pending> batch) {
+        long start = System.nanoTime();
+        Map<ObjectId, Integer> deltas = new HashMap<>();
+        Map<Key, Pending> written = new LinkedHashMap<>();
+        boolean flushed = write(batch, deltas, written);
+        if (!batch.isEmpty()) {
+            flushLatency.record(Duration.ofNanos(System.nanoTime() - start));
+            flushSize.record(batch.size());
+        }
+
+        // Los likes ya están escritos: si falla la suma de los contadores, solo
+        // se reintenta la suma, ya que al volver a escribirlos no se sabría
+        // cuáles se insertaron o borraron
+        flushed &= applyDeltas(deltas);
+
+        List<LikesRepository.LikeWrite> writes = new ArrayList<>(written.size());
+        written.forEach((key, entry) -> writes.add(
+            new LikesRepository.LikeWrite(key.post(), key.author(), entry.like)
+        ));
+        deltas.values().removeIf(delta -> delta == 0);
+        publish(writes, deltas);
+        written.values().forEach(entry -> entry.waiters.forEach(w -> w.complete(null)));
+        log.debug("Flushed {} likes to {} posts", writes.size(), deltas.size());
+        return flushed;
+    }
+
+    /**
+     * Escribe los cambios del lote y vuelve a encolar los que fallan.
+     * @param deltas Se le suman las variaciones de <code>n_likes</code> de lo
+     *               que se ha escrito.
+     * @param written Se le añaden los cambios escritos.
+     * @return <code>false</code> si algún cambio no se ha podido escribir.
+     */
+    private boolean write(Map<Key, Pending> batch, Map<ObjectId, Integer> deltas, Map<Key, Pending> written) {
+        List<Like> inserts = new ArrayList<>();
+        List<Like> removals = new ArrayList<>();
+        Map<Key, ObjectId> ids = new HashMap<>();
+        try {
+            // Antes de volver a escribir nada, saber qué ha pasado con las
+            // escrituras de las que no se conoce el resultado
+            resolveUncertain(deltas);
+
+            // Para quitar un like hace falta su _id
+            List<LikesRepository.LikeWrite> unlikes = new ArrayList<>();
+            batch.forEach((key, entry) -> {
+                if (!entry.like) {
+                    unlikes.add(new LikesRepository.LikeWrite(key.post(), key.author(), false));
+                }
+            });
+            for (Like like : likesRepo.findLikes(unlikes)) {
+                removals.add(like);
+                ids.put(new Key(like.post(), like.author()), like.id());
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not flush {} likes, retrying: {}", batch.size(), reason(e));
+            batch.forEach((key, entry) -> retry(key, entry, reason(e), isCounted(e)));
+            return false;
+        }
+
+        batch.forEach((key, entry) -> {
+            if (entry.like) {
+                Like like = new Like(new ObjectId(), key.post(), key.author());
+                inserts.add(like);
+                ids.put(key, like.id());
+            }
+        });
+
+        Map<ObjectId, Failure> failed = new HashMap<>();
+        apply(inserts, true, deltas, failed);
+        apply(removals, false, deltas, failed);
+
+        batch.forEach((key, entry) -> {
+            // Quitar un like que no existe no necesita escribir nada
+            ObjectId id = ids.get(key);
+            Failure failure = id == null ? null : failed.get(id);
+            if (failure == null) {
+                written.put(key, entry);
+            } else {
+                retry(key, entry, failure.reason(), failure.counted());
+            }
+        });
+        if (!failed.isEmpty()) {
+            log.warn("Could not write {} of {} likes, retrying", failed.size(), batch.size());
+        }
+        return failed.isEmpty();
+    }
+
+    /**
+     * Aplica las inserciones o los borrados. Las operaciones de un
+     * <i>bulk</i> desordenado que no fallan se aplican igualmente, así que
+     * solo se reintentan las que han fallado.
+     * @param failed Se le añade cada like que no se ha escrito.
+     */
+    private void apply(List<Like> likes, boolean insert, Map<ObjectId, Integer> deltas, Map<ObjectId, Failure> failed) {
+        try {
+            LikesRepository.BatchResult result = insert
+                ? likesRepo.insertBatch(likes)
+                : likesRepo.removeBatch(likes);
+            result.deltas().forEach((postId, delta) -> deltas.merge(postId, delta, Integer::sum));
+            result.failed().forEach((id, error) -> failed.put(id, new Failure(error, true)));
+        } catch (RuntimeException e) {
+            // Puede haber fallado después de aplicarse (p. ej. un timeout): se
+            // comprueba antes del siguiente intento
+            Failure failure = new Failure(reason(e), isCounted(e));
+            for (Like like : likes) {
+                uncertain.put(like.id(), new Uncertain(like.post(), insert));
+                failed.put(like.id(), failure);
+            }
+        }
+    }
+
+    /**
+     * Cuenta las escrituras de las que no se conocía el resultado: un like
+     * insertado si ahora existe, o borrado si ya no existe.
+     */
+    private void resolveUncertain(Map<ObjectId, Integer> deltas) {
+        if (uncertain.isEmpty()) {
+            return;
+        }
+        Set<ObjectId> existing = likesRepo.findExistingIds(uncertain.keySet());
+        uncertain.forEach((id, write) -> {
+            if (write.insert() == existing.contains(id)) {
+                deltas.merge(write.post(), write.insert() ? 1 : -1, Integer::sum);
+            }
+        });
+        uncertain.clear();
+    }
+
+    /**
+     * Suma las variaciones a los contadores de los posts, junto con las que
+     * no se pudieron sumar antes.
+     * @return <code>false</code> si no se han podido sumar; se reintentan en
+     * la siguiente escritura.
+     */
+    private boolean applyDeltas(Map<ObjectId, Integer> deltas) {
+        Map<ObjectId, Integer> total = new HashMap<>(unappliedDeltas);
+        deltas.forEach((postId, delta) -> total.merge(postId, delta, Integer::sum));
+        total.values().removeIf(delta -> delta == 0);
+        unappliedDeltas.clear();
+        try {
+            counters.incrementAll(CounterService.Counter.LIKES, total);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Could not update like counters of {} posts, retrying: {}", total.size(), reason(e));
+            unappliedDeltas.putAll(total);
+            return false;
+        }
+    }
+
+    /**
+     * Avisa al índice de likes, a las tendencias y al feed en directo. No son
+     * críticos: un fallo no debe hacer reescribir los likes.
+     */
+    private void publish(List<LikesRepository.LikeWrite> writes, Map<ObjectId, Integer> deltas) {
+        try {
+            likeIndex.apply(writes);
+        } catch (RuntimeException e) {
+            log.warn("Could not update like index: {}", reason(e));
+        }
+        try {
+            deltas.forEach((postId, delta) -> {
+                if (delta > 0) {
+                    trending.bumpLikes(postId, delta);
+                }
+            });
+            liveFeed.publishLikes(deltas);
+        } catch (RuntimeException e) {
+            log.warn("Could not publish likes: {}", reason(e));
+        }
+    }
+
+    /**
+     * Vuelve a encolar un cambio que no se ha podido escribir, con quienes
+     * esperan a que se escriba. Si mientras tanto ha llegado otro más reciente
+     * para el mismo par, se queda ese, y los que esperaban pasan a esperarlo.
+     * Solo reciben un error si el cambio se descarta.
+     * @param counted Si el fallo cuenta para <code>likes.max-attempts</code>;
+     *                al llegar a ese límite el cambio se descarta.
+     */
+    private void retry(Key key, Pending entry, String reason, boolean counted) {
+        int attempts = counted ? entry.attempts + 1 : entry.attempts;
+        if (attempts >= maxAttempts) {
+            dropped.increment();
+            log.error("Dropped like of {} on post {} after {} attempts: {}",
+                key.author(), key.post(), attempts, reason);
+            IllegalStateException error = new IllegalStateException("Could not write like: " + reason);
+            entry.waiters.forEach(w -> w.completeExceptionally(error));
+            return;
+        }
+        synchronized (lock) {
+            Pending newer = pending.get(key);
+            if (newer == null) {
+                entry.attempts = attempts;
+                pending.put(key, entry);
+            } else {
+                newer.waiters.addAll(entry.waiters);
+            }
+        }
+    }
+
+    /** Si MongoDB no está disponible, el intento no cuenta */
+    private static boolean isCounted(RuntimeException e) {
+        return !(e instanceof DataAccessResourceFailureException);
+    }
+
+    private static String reason(RuntimeException e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    // ==== TIPOS AUXILIARES ===================================================
+
+    private record Key(ObjectId post, ObjectId author) {}
+
+    /** Motivo por el que no se ha escrito un like */
+    private record Failure(String reason, boolean counted) {}
+
+    /** Inserción o borrado de un like que puede haberse aplicado o no */
+    private record Uncertain(ObjectId post, boolean insert) {}
+
+    /** Último estado pedido para un par y quiénes esperan a que se escriba */
+    private static final class Pending {
+        boolean like;
+        // Fallos de escritura de este cambio
+        int attempts;
+        final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+    }
+}
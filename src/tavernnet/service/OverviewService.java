@@ -0,0 +1,162 @@
+package tavernnet.service;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tavernnet.exception.DeadlineExceededException;
+import tavernnet.exception.ResourceNotFoundException;
+import tavernnet.model.Character;
+import tavernnet.model.PostView;
+import tavernnet.model.User;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Vista de conjunto de un usuario (<code>GET /users/{userid}/overview</code>):
+ * su perfil con sus personajes, los posts más recientes de cada personaje y sus
+ * parties, en una única petición.
+ * <br/>
+ * Las consultas se lanzan a la vez, cada una en su propio hilo virtual: el
+ * perfil y las parties nada más empezar, y los posts de cada personaje en
+ * cuanto se conoce el perfil. Así la petición tarda lo que la consulta más
+ * lenta, y no la suma de todas.
+ * <br/>
+ * Funciona como un <code>StructuredTaskScope.ShutdownOnFailure</code> (que en
+ * Java 21 aún es <i>preview</i>): todas las consultas tienen un único plazo,
+ * <code>overview.timeout</code>, y el primer error o el fin del plazo
+ * interrumpe las que quedan y termina la petición, sin esperar al resto.
+ */
+@Service
+@NullMarked
+public class OverviewService {
+
+    private static final Logger log = LoggerFactory.getLogger(OverviewService.class);
+
+    private final ProfileService profiles;
+    private final PostService posts;
+    private final PartyService parties;
+
+    /** Plazo para obtener todas las partes de la respuesta */
+    @Value("${overview.timeout:PT2S}")
+    private Duration timeout;
+
+    @Autowired
+    public OverviewService(ProfileService profiles, PostService posts, PartyService parties) {
+        this.profiles = profiles;
+        this.posts = posts;
+        this.parties = parties;
+    }
+
+    /**
+     * @param postsPerCharacter Número de posts de cada personaje.
+     * @param activeCharacter Personaje activo del usuario autenticado, si lo hay.
+     * @throws ResourceNotFoundException Si el usuario no existe.
+     * @throws DeadlineExceededException Si no se obtiene todo a tiempo.
+     */
+    public User.Overview getOverview(
+        String username,
+        int postsPerCharacter,
+        @Nullable ObjectId activeCharacter
+    ) throws ResourceNotFoundException, DeadlineExceededException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        // Tras un error o el fin del plazo, las consultas que queden se
+        // interrumpen antes de que close() espere a que terminen
+        try (executor) {
+            try {
+                // Se completa con el primer error de cualquiera de las consultas
+                CompletableFuture<Void> failure = new CompletableFuture<>();
+
+                var profile = fork(executor, failure, () -> profiles.get(username).profile());
+                var partyNames = fork(executor, failure, () -> parties.getPartyNamesOf(username));
+                var characterPosts = profile.thenCompose(p -> {
+                    Map<String, CompletableFuture<List<PostView.PostResponse>>> byCharacter = new LinkedHashMap<>();
+                    for (Character character : p.characters()) {
+                        byCharacter.put(character.id().toHexString(), fork(executor, failure, () -> posts
+                            .getCharacterPosts(character.id(), null, postsPerCharacter, activeCharacter)
+                            .page()
+                        ));
+                    }
+                    return CompletableFuture
+                        .allOf(byCharacter.values().toArray(CompletableFuture<?>[]::new))
+                        .thenApply(ignored -> {
+                            Map<String, List<PostView.PostResponse>> result = new LinkedHashMap<>();
+                            byCharacter.forEach((id, future) -> result.put(id, future.join()));
+                            return result;
+                        });
+                });
+
+                CompletableFuture
+                    .anyOf(CompletableFuture.allOf(partyNames, characterPosts), failure)
+                    .get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+
+                log.debug("GET /users/{}/overview in {} ms",
+                    username, Duration.ofNanos(System.nanoTime() - start).toMillis());
+                return new User.Overview(profile.join(), characterPosts.join(), partyNames.join());
+            } finally {
+                executor.shutdownNow();
+            }
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException(
+                "Overview of '%s' took more than %d ms".formatted(username, timeout.toMillis())
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException("Overview of '%s' was interrupted".formatted(username));
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            switch (cause) {
+                case ResourceNotFoundException notFound -> throw notFound;
+                case RuntimeException runtime -> throw runtime;
+                default -> throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    /** Lanza una consulta en un hilo virtual, avisando de su error a las demás */
+    private static <T> CompletableFuture<T> fork(
+        ExecutorService executor,
+        CompletableFuture<Void> failure,
+        Callable<T> task
+    ) {
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                failure.completeExceptionally(unwrap(error));
+            }
+        });
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null
+            ? error.getCause()
+            : error;
+    }
+}
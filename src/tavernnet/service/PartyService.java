@@ -39,6 +39,14 @@ public class PartyService {
         return parties.findAll();
     }
 
+    /**
+     * @return Nombres de las parties en las que participa el usuario, como DM
+     * o con alguno de sus personajes.
+     */
+    public List<String> getPartyNamesOf(String username) {
+        return parties.findNamesByMember(username).stream().map(Party::getName).toList();
+    }
+
     /**
      * @return Party especificada por id (nombre).
      */
@@ -0,0 +1,59 @@
+package tavernnet.service;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Descarta todo lo que se guarda fuera del documento de un post borrado:
+ * tendencias, contadores e índices en Redis y cachés en memoria. Lo usan tanto
+ * el borrado de un post como el de todos los posts de un usuario.
+ */
+@Service
+@NullMarked
+public class PostCleanupService {
+
+    private final TrendingService trending;
+    private final CounterService counters;
+    private final LikeIndexService likeIndex;
+    private final ViewService views;
+    private final TimelineService timeline;
+    private final ExistenceService existence;
+    private final ResponseCacheService responseCache;
+
+    @Autowired
+    public PostCleanupService(
+        TrendingService trending,
+        CounterService counters,
+        LikeIndexService likeIndex,
+        ViewService views,
+        TimelineService timeline,
+        ExistenceService existence,
+        ResponseCacheService responseCache
+    ) {
+        this.trending = trending;
+        this.counters = counters;
+        this.likeIndex = likeIndex;
+        this.views = views;
+        this.timeline = timeline;
+        this.existence = existence;
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * @param postId Post ya borrado.
+     * @param authorId Personaje autor del post.
+     */
+    public void forget(ObjectId postId, ObjectId authorId) {
+        // Los contadores se guardan en el propio documento del post, por lo que
+        // desaparecen con él (salvo lo pendiente en Redis)
+        trending.remove(postId);
+        counters.remove(postId);
+        likeIndex.remove(postId);
+        views.remove(postId);
+        timeline.evict(authorId);
+        existence.evictPost(postId);
+        responseCache.invalidatePost(postId);
+    }
+}
@@ -3,16 +3,40 @@ package tavernnet.service;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.jspecify.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
-import java.util.Collection;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import tavernnet.exception.InvalidCursorException;
+import tavernnet.exception.InvalidParameterException;
 import tavernnet.exception.ResourceNotFoundException;
+import tavernnet.model.Character;
 import tavernnet.model.Comment;
+import tavernnet.model.CursorPage;
+import tavernnet.model.Job;
 import tavernnet.model.PostView;
 import tavernnet.model.Post;
 import tavernnet.repository.*;
+import tavernnet.service.feed.FeedRanker;
+import tavernnet.utils.Cursor;
+import tavernnet.utils.ETags;
 
 @Service
 public class PostService {
@@ -21,43 +45,327 @@ public class PostService {
 
     private final PostsRepository postsRepo;
     private final PostsViewRepository postsViewRepo;
-    private final LikesRepository likesRepo;
     private final CommentsRepository commentRepo;
-    private final CharacterRepository charRepo;
+    private final Map<String, FeedRanker> rankers;
+    private final TrendingService trending;
+    private final LikeIngestionService likes;
+    private final CounterService counters;
+    private final LikeIndexService likeIndex;
+    private final JobService jobs;
+    private final ResponseCacheService responseCache;
+    private final AuthorService authors;
+    private final ExistenceService existence;
+    private final FeedHub liveFeed;
+    private final PostCleanupService cleanup;
+    private final TimelineService timeline;
+
+    /** Número de candidatos de cada tipo que se puntúan en los feeds ordenados */
+    @Value("${feed.candidates:200}")
+    private int feedCandidates;
 
     @Autowired
     public PostService(
         PostsRepository postsRepo,
         PostsViewRepository postsViewRepo,
         CommentsRepository commentRepo,
-        LikesRepository likesRepo,
-        CharacterRepository charRepo
+        List<FeedRanker> rankers,
+        TrendingService trending,
+        LikeIngestionService likes,
+        CounterService counters,
+        LikeIndexService likeIndex,
+        JobService jobs,
+        ResponseCacheService responseCache,
+        AuthorService authors,
+        ExistenceService existence,
+        FeedHub liveFeed,
+        PostCleanupService cleanup,
+        TimelineService timeline
     ) {
         this.postsRepo = postsRepo;
         this.postsViewRepo = postsViewRepo;
         this.commentRepo = commentRepo;
-        this.likesRepo = likesRepo;
-        this.charRepo = charRepo;
+        this.rankers = rankers.stream()
+            .collect(Collectors.toMap(FeedRanker::name, Function.identity()));
+        this.trending = trending;
+        this.likes = likes;
+        this.counters = counters;
+        this.likeIndex = likeIndex;
+        this.jobs = jobs;
+        this.responseCache = responseCache;
+        this.authors = authors;
+        this.existence = existence;
+        this.liveFeed = liveFeed;
+        this.cleanup = cleanup;
+        this.timeline = timeline;
+    }
+
+    /**
+     * @param after Cursor devuelto por la página anterior, o <code>null</code>
+     *              para obtener la primera.
+     * @param limit Número máximo de posts de la página.
+     * @param algorithm Nombre del {@link FeedRanker} que ordena el feed.
+     * @param activeCharacter Personaje activo del usuario, si lo hay.
+     * @return Página de posts y el cursor de la siguiente.
+     * @throws InvalidCursorException Si el cursor no es válido.
+     * @throws InvalidParameterException Si el algoritmo no existe.
+     */
+    public CursorPage<PostView.PostResponse> getPosts(
+        @Nullable String after,
+        int limit,
+        String algorithm,
+        @Nullable ObjectId activeCharacter
+    ) throws InvalidCursorException, InvalidParameterException {
+        FeedRanker ranker = rankers.get(algorithm);
+        if (ranker == null) {
+            throw new InvalidParameterException("algorithm", algorithm);
+        }
+
+        log.debug("GET /posts algorithm={} after={} limit={}", algorithm, after, limit);
+        CursorPage<PostView> page = ranker.isChronological()
+            ? getLatestPosts(after, limit)
+            : getRankedPosts(ranker, after, limit, activeCharacter);
+        return new CursorPage<>(toResponses(page.page(), activeCharacter), page.nextCursor());
+    }
+
+    /**
+     * Feed cronológico completo, para respuestas en streaming. Los contadores
+     * son los consolidados en MongoDB (ver {@link CounterService}).
+     * @param after Cursor desde el que empezar, o <code>null</code> para
+     *              empezar por el post más reciente.
+     * @return Abre el stream de posts, que se debe cerrar tras usarlo. Se
+     * devuelve así para que el cursor de MongoDB se abra solo cuando se vaya a
+     * escribir la respuesta.
+     * @throws InvalidCursorException Si el cursor no es válido.
+     */
+    public Supplier<Stream<PostView.PostResponse>> streamPosts(
+        @Nullable String after
+    ) throws InvalidCursorException {
+        log.debug("GET /posts streaming after={}", after);
+        if (after == null) {
+            return () -> postsViewRepo.streamLatest().map(PostView.PostResponse::new);
+        }
+
+        // Validar el cursor antes de empezar a responder
+        Cursor.Keyset cursor = Cursor.Keyset.decode(after);
+        return () -> postsViewRepo
+            .streamLatestBefore(cursor.date(), cursor.id())
+            .map(PostView.PostResponse::new);
+    }
+
+    /**
+     * Posts escritos por un personaje, los más recientes primero, paginados
+     * por cursor sobre el índice <code>{author, date, _id}</code>. La primera
+     * página se sirve de {@link TimelineService} si está guardada, y solo se
+     * leen de MongoDB sus contadores.
+     * @param after Cursor devuelto por la página anterior, o <code>null</code>
+     *              para obtener la primera.
+     * @param limit Número máximo de posts de la página.
+     * @param activeCharacter Personaje activo del usuario, si lo hay.
+     * @return Página de posts y el cursor de la siguiente.
+     * @throws ResourceNotFoundException Si el personaje no existe.
+     * @throws InvalidCursorException Si el cursor no es válido.
+     */
+    public CursorPage<PostView.PostResponse> getCharacterPosts(
+        ObjectId characterId,
+        @Nullable String after,
+        int limit,
+        @Nullable ObjectId activeCharacter
+    ) throws ResourceNotFoundException, InvalidCursorException {
+        existence.requireCharacter(characterId);
+        log.debug("GET /characters/{}/posts after={} limit={}", characterId, after, limit);
+
+        // Se pide un elemento más para saber si existe una página siguiente
+        List<PostView> posts;
+        if (after != null) {
+            Cursor.Keyset cursor = Cursor.Keyset.decode(after);
+            posts = postsViewRepo.findLatestByAuthorBefore(
+                characterId,
+                cursor.date(),
+                cursor.id(),
+                PageRequest.ofSize(limit + 1)
+            );
+        } else {
+            List<PostView> cached = timeline.recent(characterId, limit + 1);
+            if (cached != null) {
+                posts = withCurrentCounters(cached);
+            } else {
+                // Leer al menos los que se guardan, aunque la página sea menor.
+                // La generación se lee antes, por si se publica un post mientras
+                String generation = timeline.generation(characterId);
+                posts = postsViewRepo.findLatestByAuthor(
+                    characterId,
+                    PageRequest.ofSize(Math.max(limit + 1, timeline.cacheSize()))
+                );
+                timeline.store(characterId, generation, posts);
+                posts = posts.subList(0, Math.min(limit + 1, posts.size()));
+            }
+        }
+
+        CursorPage<PostView> page = CursorPage.of(
+            posts,
+            limit,
+            p -> new Cursor.Keyset(p.date(), p.id()).encode()
+        );
+        return new CursorPage<>(
+            toResponses(counters.withPending(page.page()), activeCharacter),
+            page.nextCursor()
+        );
+    }
+
+    /** Feed cronológico: paginación por cursor sobre el índice {date, _id} */
+    private CursorPage<PostView> getLatestPosts(
+        @Nullable String after,
+        int limit
+    ) throws InvalidCursorException {
+        // Se pide un elemento más para saber si existe una página siguiente
+        Pageable pageable = PageRequest.ofSize(limit + 1);
+
+        List<PostView> posts;
+        if (after == null) {
+            posts = postsViewRepo.findLatest(pageable);
+        } else {
+            Cursor.Keyset cursor = Cursor.Keyset.decode(after);
+            posts = postsViewRepo.findLatestBefore(cursor.date(), cursor.id(), pageable);
+        }
+
+        CursorPage<PostView> page = CursorPage.of(
+            posts,
+            limit,
+            p -> new Cursor.Keyset(p.date(), p.id()).encode()
+        );
+        return new CursorPage<>(counters.withPending(page.page()), page.nextCursor());
     }
 
     /**
-     * @return Lista de todos los posts.
+     * Feed ordenado por un {@link FeedRanker}. Nunca se puntúa toda la
+     * colección, solo los posts más recientes y los de más interacciones
+     * (como mucho <code>2 * feed.candidates</code>). El cursor es la posición
+     * dentro de estos candidatos ya ordenados.
      */
-    // TODO: parámetros para personalizar el algoritmo
-    // TODO: paginación
-    public Collection<PostView.PostResponse> getPosts() {
-        return postsViewRepo.findAll().stream().map(PostView.PostResponse::new).toList();
+    private CursorPage<PostView> getRankedPosts(
+        FeedRanker ranker,
+        @Nullable String after,
+        int limit,
+        @Nullable ObjectId activeCharacter
+    ) throws InvalidCursorException {
+        int offset = after == null ? 0 : decodeRankedCursor(ranker, after);
+
+        // Candidatos: ambas consultas usan un índice y están acotadas
+        Pageable candidates = PageRequest.ofSize(feedCandidates);
+        Map<ObjectId, PostView> pool = new LinkedHashMap<>();
+        postsViewRepo.findLatest(candidates).forEach(p -> pool.put(p.id(), p));
+        postsViewRepo.findMostEngaged(candidates).forEach(p -> pool.putIfAbsent(p.id(), p));
+        // Puntuar con los contadores al día, no solo con lo consolidado
+        counters.withPending(List.copyOf(pool.values())).forEach(p -> pool.put(p.id(), p));
+
+        // Calcular la puntuación una sola vez por post
+        ToDoubleFunction<PostView> scorer = ranker.scorer(activeCharacter, LocalDateTime.now());
+        Map<ObjectId, Double> scores = new LinkedHashMap<>();
+        pool.values().forEach(p -> scores.put(p.id(), scorer.applyAsDouble(p)));
+
+        List<PostView> ranked = pool.values().stream()
+            .sorted(Comparator
+                .comparing((PostView p) -> scores.get(p.id()), Comparator.reverseOrder())
+                .thenComparing(PostView::id, Comparator.reverseOrder()))
+            .toList();
+
+        int from = Math.min(offset, ranked.size());
+        int to = Math.min(offset + limit, ranked.size());
+        String next = to < ranked.size()
+            ? Cursor.encode(ranker.name(), Integer.toString(to))
+            : null;
+        return new CursorPage<>(ranked.subList(from, to), next);
+    }
+
+    private static int decodeRankedCursor(
+        FeedRanker ranker,
+        String after
+    ) throws InvalidCursorException {
+        // Un cursor de otro algoritmo no tiene sentido en este orden
+        String[] parts = Cursor.decode(after, 2);
+        if (!parts[0].equals(ranker.name())) {
+            throw new InvalidCursorException(after);
+        }
+
+        try {
+            int offset = Integer.parseInt(parts[1]);
+            if (offset < 0) {
+                throw new InvalidCursorException(after);
+            }
+            return offset;
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException(after);
+        }
+    }
+
+    /**
+     * @param limit Número máximo de posts.
+     * @param activeCharacter Personaje activo del usuario, si lo hay.
+     * @return Posts en tendencia, de mayor a menor puntuación.
+     */
+    public List<PostView.PostResponse> getTrendingPosts(
+        int limit,
+        @Nullable ObjectId activeCharacter
+    ) {
+        List<ObjectId> ids = trending.top(limit);
+        Map<ObjectId, PostView> found = counters.withPending(postsViewRepo.findAllById(ids)).stream()
+            .collect(Collectors.toMap(PostView::id, Function.identity()));
+
+        // Mantener el orden del índice. Si algún post ya no existe, se omite
+        List<PostView> ordered = ids.stream()
+            .filter(found::containsKey)
+            .map(found::get)
+            .toList();
+        return toResponses(ordered, activeCharacter);
     }
 
     /**
      * @param id Identificador del post.
+     * @param activeCharacter Personaje activo del usuario, si lo hay.
      * @return El post que tiene el id especificado.
      * @throws ResourceNotFoundException Si el post no se encuentra.
      */
-    public PostView.PostResponse getPost(ObjectId id) throws ResourceNotFoundException {
-        return new PostView.PostResponse(postsViewRepo
+    public PostView.PostResponse getPost(
+        ObjectId id,
+        @Nullable ObjectId activeCharacter
+    ) throws ResourceNotFoundException {
+        PostView post = postsViewRepo
             .findById(id)
-            .orElseThrow(() -> new ResourceNotFoundException("Post", String.valueOf(id)))
+            .orElseThrow(() -> new ResourceNotFoundException("Post", String.valueOf(id)));
+        return toResponses(List.of(counters.withPending(post)), activeCharacter).getFirst();
+    }
+
+    /**
+     * ETag de {@link #getPost}, calculado a partir de la versión y los
+     * contadores del post sin leer su contenido.
+     * @param activeCharacter Personaje activo del usuario, si lo hay, ya que
+     *                        la respuesta incluye <code>likedByMe</code>.
+     * @param expandAuthor Si la respuesta incluye los datos del autor.
+     * @throws ResourceNotFoundException Si el post no se encuentra.
+     */
+    public String getPostETag(
+        ObjectId id,
+        @Nullable ObjectId activeCharacter,
+        boolean expandAuthor
+    ) throws ResourceNotFoundException {
+        Post post = postsRepo
+            .findVersionById(id)
+            .orElseThrow(() -> new ResourceNotFoundException("Post", String.valueOf(id)));
+        PostCountersRepository.Counts pending = counters.pending(id);
+        Boolean likedByMe = activeCharacter == null
+            ? null
+            : likeIndex.likedBy(activeCharacter, List.of(id)).contains(id);
+        Character.AuthorSummary author = expandAuthor
+            ? authors.summaries(List.of(post.getAuthor())).get(post.getAuthor())
+            : null;
+
+        return ETags.of(
+            post.getVersion(),
+            post.getNLikes() + pending.likes(),
+            post.getNComments() + pending.comments(),
+            post.getNViews(),
+            likedByMe,
+            author
         );
     }
 
@@ -69,48 +377,109 @@ public class PostService {
         Post.PostRequest newPost,
         ObjectId characterId
     ) throws ResourceNotFoundException {
-        if (!charRepo.existsById(characterId)) {
-            throw new ResourceNotFoundException("Character", String.valueOf(characterId));
-        }
+        existence.requireCharacter(characterId);
 
         Post realPost = new Post(newPost, characterId);
         realPost = postsRepo.save(realPost);
         log.info("Created post with id '{}' by '{}'", realPost.getId(), characterId);
 
+        PostView view = new PostView(
+            realPost.getId(),
+            realPost.getTitle(),
+            realPost.getContent(),
+            realPost.getAuthor(),
+            realPost.getDate(),
+            0,
+            0,
+            0
+        );
+        timeline.push(view);
+        liveFeed.publishPost(new PostView.PostResponse(view));
+
         return realPost.getId();
     }
 
     /**
+     * Borra el post inmediatamente, y sus comentarios y likes en segundo plano.
      * @param postId Identificador del post a borrar
+     * @param submitter Usuario que lo pide, que podrá consultar la tarea.
+     * @return Tarea que borra los comentarios y likes del post.
      * @throws ResourceNotFoundException Si el ID no existe
      */
-    public void deletePost(ObjectId postId) throws ResourceNotFoundException {
-        postsRepo
-            .deletePostById(postId)
-            .orElseThrow(() -> new ResourceNotFoundException("Post", String.valueOf(postId)));
+    public Job deletePost(ObjectId postId, String submitter) throws ResourceNotFoundException {
+        if (!postsRepo.existsById(postId)) {
+            throw new ResourceNotFoundException("Post", String.valueOf(postId));
+        }
+
+        // Sin el post, sus comentarios y likes ya no son accesibles, pero
+        // puede haber muchos: se borran en lotes en una tarea persistente. Se
+        // guarda antes de borrar el post para que, si el servidor se cae en
+        // medio, la tarea lo borre y no queden comentarios ni likes huérfanos
+        Job job = jobs.hold(Job.Type.POST_CASCADE, postId.toHexString(), submitter);
+
+        Optional<Post> post = postsRepo.deletePostById(postId);
+        if (post.isEmpty()) {
+            // Otra petición lo ha borrado a la vez, y ya tiene su tarea
+            jobs.cancel(job);
+            throw new ResourceNotFoundException("Post", String.valueOf(postId));
+        }
 
-        // Borrar en cascada los elementos asociados al post
-        commentRepo.deleteByPostId(postId);
-        likesRepo.deleteByPostId(postId);
+        cleanup.forget(postId, post.get().getAuthor());
+        jobs.start(job);
+        return job;
     }
 
     /**
+     * Página de comentarios de un post, los más antiguos primero. La
+     * existencia del post y la página se obtienen en una sola consulta.
      * @param postId Identificador del post a obtener sus comentarios
-     * @return Lista de comentarios del post especificado
+     * @param after Cursor devuelto por la página anterior, o <code>null</code>
+     *              para obtener la primera.
+     * @param limit Número máximo de comentarios de la página.
+     * @return Página de comentarios del post especificado
      * @throws ResourceNotFoundException Si el ID no existe
+     * @throws InvalidCursorException Si el cursor no es válido.
      */
-    public Collection<Comment> getCommentsByPost(
-        ObjectId postId
-    ) throws ResourceNotFoundException {
-        // Buscar si existe un post con este ID
-        if (!postsRepo.existsById(postId)) {
+    public CursorPage<Comment> getCommentsByPost(
+        ObjectId postId,
+        @Nullable String after,
+        int limit
+    ) throws ResourceNotFoundException, InvalidCursorException {
+        // Se pide un elemento más para saber si existe una página siguiente
+        List<Comment.PostComments> result;
+        if (after == null) {
+            result = postsRepo.findFirstComments(postId, limit + 1);
+        } else {
+            Cursor.Keyset cursor = Cursor.Keyset.decode(after);
+            result = postsRepo.findCommentsAfter(postId, cursor.date(), cursor.id(), limit + 1);
+        }
+
+        // Si el post no existe, la agregación no devuelve ningún documento
+        if (result.isEmpty()) {
             throw new ResourceNotFoundException("Post", String.valueOf(postId));
         }
 
-        // Obtener la lista de comentarios
-        return commentRepo
-            .getCommentsByPost(postId)
-            .orElseThrow(() -> new ResourceNotFoundException("Post", String.valueOf(postId)));
+        List<Comment> comments = result.getFirst().comments();
+        log.debug("GET /posts/{}/comments after={} found {}", postId, after, comments.size());
+        return CursorPage.of(comments, limit, c -> new Cursor.Keyset(c.date(), c.id()).encode());
+    }
+
+    /**
+     * @param postId Identificador del post a obtener sus comentarios
+     * @return Abre el stream de comentarios del post, que se debe cerrar tras
+     * usarlo.
+     * @throws ResourceNotFoundException Si el ID no existe
+     */
+    public Supplier<Stream<Comment.CommentResponse>> streamCommentsByPost(
+        ObjectId postId
+    ) throws ResourceNotFoundException {
+        // Comprobar antes de empezar a responder, para poder devolver un 404
+        existence.requirePost(postId);
+
+        log.debug("GET /posts/{}/comments streaming", postId);
+        return () -> commentRepo
+            .streamCommentsByPost(postId)
+            .map(Comment.CommentResponse::new);
     }
 
     /**
@@ -124,47 +493,84 @@ public class PostService {
         ObjectId characterId,
         Comment.CommentRequest newComment
     ) throws ResourceNotFoundException {
-        // Comprobar si el post existe o no
-        if (!postsRepo.existsById(postId)) {
-            throw new ResourceNotFoundException("Post", String.valueOf(postId));
-        }
-
-        if (!charRepo.existsById(characterId)) {
-            throw new ResourceNotFoundException("Character", String.valueOf(postId));
-        }
+        existence.requirePostAndCharacter(postId, characterId);
 
         Comment comment = new Comment(postId, characterId, newComment);
         comment = commentRepo.save(comment);
+        counters.increment(postId, CounterService.Counter.COMMENTS, 1);
+        trending.bumpComment(postId);
+        responseCache.invalidatePost(postId);
+        liveFeed.publishCounters(postId, 0, 1);
 
         log.info("Created comment in post '{}' by '{}'", postId, characterId);
         return comment.id();
     }
 
-    public void giveLike(ObjectId postId, ObjectId characterId)
+    /**
+     * Encola un like, que se escribe junto con otros en la base de datos.
+     * @return Futuro que se completa cuando el like se ha escrito.
+     * @throws ResourceNotFoundException Si el post o el personaje no existen.
+     */
+    public CompletableFuture<Void> giveLike(ObjectId postId, ObjectId characterId)
             throws ResourceNotFoundException {
-        if (!postsRepo.existsById(postId)) {
-            throw new ResourceNotFoundException("Post", String.valueOf(postId));
-        }
+        existence.requirePostAndCharacter(postId, characterId);
 
-        if (!charRepo.existsById(characterId)) {
-            throw new ResourceNotFoundException("Character", String.valueOf(characterId));
-        }
-
-        likesRepo.addLike(postId, characterId);
         log.info("Character '{}' gave like to post '{}'", characterId, postId);
+        return likes.enqueue(postId, characterId, true);
     }
 
-    public void removeLike(ObjectId postId, ObjectId characterId)
+    /**
+     * Encola la retirada de un like, que se escribe junto con otros en la base
+     * de datos.
+     * @return Futuro que se completa cuando el cambio se ha escrito.
+     * @throws ResourceNotFoundException Si el post o el personaje no existen.
+     */
+    public CompletableFuture<Void> removeLike(ObjectId postId, ObjectId characterId)
             throws ResourceNotFoundException {
-        if (!postsRepo.existsById(postId)) {
-            throw new ResourceNotFoundException("Post", String.valueOf(postId));
-        }
+        existence.requirePostAndCharacter(postId, characterId);
 
-        if (!charRepo.existsById(characterId)) {
-            throw new ResourceNotFoundException("Character", String.valueOf(characterId));
+        log.info("Character '{}' removed like to post '{}'", characterId, postId);
+        return likes.enqueue(postId, characterId, false);
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    /**
+     * Posts leídos de {@link TimelineService} con sus contadores actuales,
+     * leyendo de MongoDB solo esos campos. Los que ya no existen se descartan.
+     */
+    private List<PostView> withCurrentCounters(List<PostView> posts) {
+        Map<ObjectId, PostView> current = postsViewRepo
+            .findCountersOf(posts.stream().map(PostView::id).toList())
+            .stream()
+            .collect(Collectors.toMap(PostView::id, Function.identity()));
+        return posts.stream()
+            .filter(post -> current.containsKey(post.id()))
+            .map(post -> post.withCountersOf(current.get(post.id())))
+            .toList();
+    }
+
+    /**
+     * Convierte los posts en respuestas, indicando a cuáles ha dado like el
+     * personaje activo si lo hay.
+     */
+    private List<PostView.PostResponse> toResponses(
+        List<PostView> posts,
+        @Nullable ObjectId activeCharacter
+    ) {
+        List<PostView.PostResponse> responses = posts.stream()
+            .map(PostView.PostResponse::new)
+            .toList();
+        if (activeCharacter == null || posts.isEmpty()) {
+            return responses;
         }
 
-        likesRepo.removeLike(postId, characterId);
-        log.info("Character '{}' removed like to post '{}'", characterId, postId);
+        Set<ObjectId> liked = likeIndex.likedBy(
+            activeCharacter,
+            posts.stream().map(PostView::id).toList()
+        );
+        return responses.stream()
+            .map(post -> post.withLikedByMe(liked.contains(new ObjectId(post.id()))))
+            .toList();
     }
 }
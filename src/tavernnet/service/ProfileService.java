@@ -0,0 +1,164 @@
+package tavernnet.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tavernnet.exception.ResourceNotFoundException;
+import tavernnet.model.Character;
+import tavernnet.model.User;
+import tavernnet.repository.CharacterRepository;
+import tavernnet.repository.UserRepository;
+import tavernnet.utils.ETags;
+import tavernnet.utils.LruCache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Perfiles públicos de los usuarios (<code>GET /users/{userid}</code>).
+ * <br/>
+ * Montar un perfil cuesta dos consultas (el usuario y sus personajes), así que
+ * se guarda ya montado, junto con su ETag, en una caché en memoria por nombre
+ * de usuario. Se descarta al crear, modificar o borrar uno de sus personajes y
+ * al borrar el usuario.
+ * <br/>
+ * Cada perfil guarda también la generación del usuario en
+ * {@link ResponseCacheService}, leída antes de consultar MongoDB, y solo se
+ * sirve mientras coincida con la actual. Así, los cambios hechos desde otra
+ * instancia, o mientras se cargaba el perfil, se ven en cuanto se invalida la
+ * generación, a cambio de un <code>GET</code> en Redis por lectura. Si Redis
+ * no está disponible, tardan como mucho <code>profiles.cache-ttl</code>.
+ * <br/>
+ * Los aciertos, fallos y descartes se publican como métricas
+ * <code>cache.gets</code>, <code>cache.evictions</code>,
+ * <code>cache.size</code> y <code>cache.hit.ratio</code>, con la etiqueta
+ * <code>cache=profiles</code>.
+ */
+@Service
+@NullMarked
+public class ProfileService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfileService.class);
+    private static final String CACHE_NAME = "profiles";
+
+    /** Perfil ya montado y su ETag */
+    public record CachedProfile(User.PublicProfile profile, String etag) {}
+
+    /** Perfil guardado y la generación del usuario con la que se cargó */
+    private record Entry(CachedProfile profile, @Nullable Long generation) {}
+
+    private final UserRepository userRepo;
+    private final CharacterRepository charRepo;
+    private final ResponseCacheService responseCache;
+    private final LruCache<String, Entry> cache;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public ProfileService(
+        UserRepository userRepo,
+        CharacterRepository charRepo,
+        ResponseCacheService responseCache,
+        MeterRegistry registry,
+        @Value("${profiles.cache-size:10000}") int cacheSize,
+        // Si Redis no está disponible, los cambios hechos en otra instancia
+        // tardan como mucho esto en verse
+        @Value("${profiles.cache-ttl:PT1M}") Duration cacheTtl
+    ) {
+        this.userRepo = userRepo;
+        this.charRepo = charRepo;
+        this.responseCache = responseCache;
+        this.cache = new LruCache<>(cacheSize, cacheTtl);
+
+        Counter hits = Counter.builder("cache.gets")
+            .tag("cache", CACHE_NAME)
+            .tag("result", "hit")
+            .description("Profiles served from the in-memory cache")
+            .register(registry);
+        Counter misses = Counter.builder("cache.gets")
+            .tag("cache", CACHE_NAME)
+            .tag("result", "miss")
+            .description("Profiles loaded from MongoDB")
+            .register(registry);
+        FunctionCounter.builder("cache.evictions", cache, LruCache::evictions)
+            .tag("cache", CACHE_NAME)
+            .description("Profiles dropped from the cache because it was full")
+            .register(registry);
+        Gauge.builder("cache.size", cache, LruCache::size)
+            .tag("cache", CACHE_NAME)
+            .description("Profiles in the cache")
+            .register(registry);
+        Gauge.builder("cache.hit.ratio", () -> hitRatio(hits, misses))
+            .tag("cache", CACHE_NAME)
+            .description("Fraction of profile reads served from the cache")
+            .register(registry);
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * @return El perfil del usuario y su ETag.
+     * @throws ResourceNotFoundException Si el usuario no existe.
+     */
+    public CachedProfile get(String username) throws ResourceNotFoundException {
+        // Leer la generación antes de cargar el perfil: si se invalida
+        // mientras tanto, el perfil guardado ya no coincidirá
+        Long generation = responseCache.userGeneration(username);
+        Entry cached = cache.get(username);
+        if (cached != null && Objects.equals(cached.generation(), generation)) {
+            hits.increment();
+            return cached.profile();
+        }
+        misses.increment();
+
+        User user = userRepo
+            .findById(username)
+            .orElseThrow(() -> new ResourceNotFoundException("User", username));
+
+        // Obtener los personajes de este usuario
+        Collection<Character> characters = charRepo.getCharactersByUser(username);
+        log.debug("Loaded profile of {} with {} characters", username, characters.size());
+
+        CachedProfile profile = new CachedProfile(
+            new User.PublicProfile(user, characters),
+            etag(user, characters)
+        );
+        cache.put(username, new Entry(profile, generation));
+        return profile;
+    }
+
+    /** Descarta el perfil guardado de un usuario modificado o borrado */
+    public void evict(String username) {
+        cache.remove(username);
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    /** Depende del usuario y de sus personajes, en orden de ID */
+    private static String etag(User user, Collection<Character> characters) {
+        List<Object> parts = new ArrayList<>();
+        parts.add(user.getCreation());
+        parts.add(user.getVersion());
+        for (Character character : characters) {
+            parts.add(character.id());
+            parts.add(character.version());
+        }
+        return ETags.of(parts.toArray());
+    }
+
+    private static double hitRatio(Counter hits, Counter misses) {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+}
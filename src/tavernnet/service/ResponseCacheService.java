@@ -0,0 +1,213 @@
+package tavernnet.service;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Caché compartida de respuestas HTTP en Redis (ver
+ * {@link tavernnet.utils.ResponseCacheFilter}).
+ * <br/>
+ * Cada respuesta se guarda con una etiqueta (<code>post:{id}</code> o
+ * <code>user:{username}</code>) y con la generación que tenía la etiqueta
+ * cuando se empezó a calcular. Invalidar una etiqueta es incrementar su
+ * generación: las respuestas guardadas con una generación anterior dejan de
+ * ser válidas, sin tener que buscarlas, y caducan solas. Como la generación se
+ * lee antes de consultar la base de datos y se incrementa después de
+ * modificarla, una respuesta calculada a la vez que una modificación nunca se
+ * sirve después de ella.
+ * <br/>
+ * Si Redis no está disponible, todas las peticiones se calculan normalmente.
+ */
+@Service
+@NullMarked
+public class ResponseCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseCacheService.class);
+    private static final String RESPONSE_PREFIX = "http:response:";
+    private static final String GENERATION_PREFIX = "http:generation:";
+    private static final String LOCK_PREFIX = "http:lock:";
+
+    /** Respuesta guardada en la caché */
+    public record CachedResponse(
+        long generation,
+        String contentType,
+        @Nullable String etag,
+        String body
+    ) {}
+
+    /**
+     * Estado de una URL en la caché.
+     * @param response Respuesta válida guardada, o <code>null</code> si no hay.
+     * @param generation Generación actual de la etiqueta.
+     * @param computing Si alguna petición está calculando ya la respuesta.
+     */
+    public record Lookup(@Nullable CachedResponse response, long generation, boolean computing) {
+        private static final Lookup MISS = new Lookup(null, 0, false);
+    }
+
+    private final StringRedisTemplate redis;
+    private final ObjectMapper mapper;
+
+    /**
+     * Tiempo máximo que se espera a que otra petición calcule la misma
+     * respuesta, y duración del bloqueo que la calcula.
+     */
+    @Value("${http-cache.lock-wait:PT2S}")
+    private Duration lockWait;
+
+    /** Cada cuánto se comprueba si la respuesta ya está calculada */
+    @Value("${http-cache.poll-interval:PT0.02S}")
+    private Duration pollInterval;
+
+    /** Duración de las generaciones: debe superar la de cualquier respuesta */
+    @Value("${http-cache.generation-ttl:P1D}")
+    private Duration generationTtl;
+
+    @Autowired
+    public ResponseCacheService(StringRedisTemplate redis, ObjectMapper mapper) {
+        this.redis = redis;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Consulta la respuesta, la generación de su etiqueta y el bloqueo con un
+     * único <code>MGET</code>.
+     * @param key URL canónica de la petición.
+     * @param tag Etiqueta de la respuesta.
+     */
+    public Lookup get(String key, String tag) {
+        try {
+            List<String> values = redis.opsForValue().multiGet(List.of(
+                RESPONSE_PREFIX + key,
+                GENERATION_PREFIX + tag,
+                LOCK_PREFIX + key
+            ));
+            if (values == null) {
+                return Lookup.MISS;
+            }
+
+            long generation = values.get(1) == null ? 0 : Long.parseLong(values.get(1));
+            CachedResponse response = values.get(0) == null
+                ? null
+                : mapper.readValue(values.get(0), CachedResponse.class);
+            if (response != null && response.generation() != generation) {
+                response = null;
+            }
+            return new Lookup(response, generation, values.get(2) != null);
+
+        } catch (DataAccessException | JacksonException e) {
+            log.warn("Could not read cached response {}: {}", key, e.getMessage());
+            return Lookup.MISS;
+        }
+    }
+
+    /**
+     * Intenta tomar el bloqueo para calcular una respuesta que no está en la
+     * caché. Así, cuando caduca una respuesta muy solicitada, solo una
+     * petición consulta la base de datos y el resto espera su resultado.
+     * @return <code>true</code> si la petición debe calcular la respuesta.
+     */
+    public boolean tryLock(String key) {
+        try {
+            Boolean locked = redis.opsForValue().setIfAbsent(LOCK_PREFIX + key, "1", lockWait);
+            return !Boolean.FALSE.equals(locked);
+        } catch (DataAccessException e) {
+            return true;
+        }
+    }
+
+    public void unlock(String key) {
+        try {
+            redis.delete(LOCK_PREFIX + key);
+        } catch (DataAccessException e) {
+            log.warn("Could not release cache lock {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Espera a que otra petición calcule la respuesta.
+     * @return El estado final: con la respuesta, o sin ella si quien la
+     * calculaba ha fallado o ha tardado más de <code>http-cache.lock-wait</code>.
+     */
+    public Lookup await(String key, String tag) throws InterruptedException {
+        long deadline = System.nanoTime() + lockWait.toNanos();
+        Lookup lookup;
+        do {
+            Thread.sleep(pollInterval);
+            lookup = get(key, tag);
+        } while (lookup.response() == null && lookup.computing() && System.nanoTime() < deadline);
+        return lookup;
+    }
+
+    /**
+     * Guarda una respuesta.
+     * @param response Respuesta, con la generación leída antes de calcularla.
+     * @param ttl Tiempo que se guarda.
+     */
+    public void put(String key, CachedResponse response, Duration ttl) {
+        try {
+            redis.opsForValue().set(RESPONSE_PREFIX + key, mapper.writeValueAsString(response), ttl);
+        } catch (DataAccessException | JacksonException e) {
+            log.warn("Could not cache response {}: {}", key, e.getMessage());
+        }
+    }
+
+    // ==== INVALIDACIÓN =======================================================
+
+    /** Invalida <code>GET /posts/{postid}</code> */
+    public void invalidatePost(ObjectId postId) {
+        invalidate("post:" + postId.toHexString());
+    }
+
+    /**
+     * Invalida <code>GET /users/{userid}</code> y todos los
+     * <code>GET /users/{userid}/characters/{name}</code>, ya que el perfil
+     * incluye los personajes.
+     */
+    public void invalidateUser(String username) {
+        invalidate("user:" + username);
+    }
+
+    /**
+     * @return La generación actual de <code>GET /users/{userid}</code>, que
+     * aumenta con cada invalidación, o <code>null</code> si Redis no está
+     * disponible.
+     */
+    public @Nullable Long userGeneration(String username) {
+        try {
+            String generation = redis.opsForValue().get(GENERATION_PREFIX + "user:" + username);
+            return generation == null ? 0 : Long.parseLong(generation);
+        } catch (DataAccessException e) {
+            log.warn("Could not read generation of user {}: {}", username, e.getMessage());
+            return null;
+        }
+    }
+
+    private void invalidate(String tag) {
+        try {
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.incr(GENERATION_PREFIX + tag);
+                conn.expire(GENERATION_PREFIX + tag, generationTtl.toSeconds());
+                return null;
+            });
+        } catch (DataAccessException e) {
+            log.error("Could not invalidate cached responses of {}: {}", tag, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package tavernnet.service;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import tavernnet.exception.InvalidCursorException;
+import tavernnet.model.CursorPage;
+import tavernnet.model.SearchHit;
+import tavernnet.repository.CommentsRepository;
+import tavernnet.repository.PostsViewRepository;
+import tavernnet.utils.Cursor;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Búsqueda de texto sobre posts y comentarios.
+ * <br/>
+ * Cada colección tiene su propio índice de texto, así que se hacen dos
+ * consultas, cada una limitada al tamaño de la página y ordenada por
+ * <code>(score, _id)</code>, y se mezclan. Como ambas usan el mismo cursor, la
+ * mezcla es exactamente la página siguiente del conjunto de resultados, sin
+ * <code>$skip</code> ni devolver más resultados que los de la página.
+ * <br/>
+ * NOTA: la puntuación no está indexada, así que cada consulta puntúa y ordena
+ * todas las coincidencias del texto antes de aplicar el cursor. Una página
+ * cuesta lo mismo que la primera, y crece con el número de coincidencias.
+ */
+@Service
+@NullMarked
+public class SearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchService.class);
+
+    private static final Comparator<SearchHit> BY_RELEVANCE = Comparator
+        .comparingDouble(SearchHit::score)
+        .thenComparing(SearchHit::id)
+        .reversed();
+
+    private final PostsViewRepository postsViewRepo;
+    private final CommentsRepository commentRepo;
+
+    @Autowired
+    public SearchService(PostsViewRepository postsViewRepo, CommentsRepository commentRepo) {
+        this.postsViewRepo = postsViewRepo;
+        this.commentRepo = commentRepo;
+    }
+
+    /**
+     * @param text Texto a buscar (sintaxis de <code>$text</code>: palabras,
+     *             <code>"frases exactas"</code> y <code>-exclusiones</code>).
+     * @param after Cursor devuelto por la página anterior, o <code>null</code>
+     *              para obtener la primera.
+     * @param limit Número máximo de resultados de la página.
+     * @return Posts y comentarios que contienen el texto, los más relevantes
+     * primero.
+     * @throws InvalidCursorException Si el cursor no es válido.
+     */
+    public CursorPage<SearchHit> search(
+        String text,
+        @Nullable String after,
+        int limit
+    ) throws InvalidCursorException {
+        // Se pide un elemento más para saber si existe una página siguiente
+        List<SearchHit> posts;
+        List<SearchHit> comments;
+        if (after == null) {
+            posts = postsViewRepo.search(text, limit + 1);
+            comments = commentRepo.search(text, limit + 1);
+        } else {
+            Cursor.Scored cursor = Cursor.Scored.decode(after);
+            posts = postsViewRepo.searchAfter(text, cursor.score(), cursor.id(), limit + 1);
+            comments = commentRepo.searchAfter(text, cursor.score(), cursor.id(), limit + 1);
+        }
+
+        List<SearchHit> hits = Stream.concat(posts.stream(), comments.stream())
+            .sorted(BY_RELEVANCE)
+            .limit(limit + 1)
+            .toList();
+        log.debug("GET /posts/search q='{}' after={} found {}", text, after, hits.size());
+        return CursorPage.of(hits, limit, hit -> new Cursor.Scored(hit.score(), hit.id()).encode());
+    }
+}
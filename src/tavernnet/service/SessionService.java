@@ -0,0 +1,87 @@
+package tavernnet.service;
+
+import org.jspecify.annotations.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import tavernnet.repository.RefreshTokenRepository;
+import tavernnet.repository.UserRefreshTokenRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Sesiones de los usuarios: sus refresh tokens y la revocación de los JWT.
+ * <br/>
+ * Un JWT es válido hasta que caduca, aunque se borre el usuario. Para cerrar
+ * sus sesiones al momento, se guarda en Redis cuándo se revocaron, durante lo
+ * que dura un JWT, y se rechazan los emitidos antes. Si Redis no está
+ * disponible, los JWT se siguen aceptando hasta que caducan.
+ */
+@Service
+@NullMarked
+public class SessionService {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionService.class);
+    private static final String REVOKED_PREFIX = "sessions:revoked:";
+
+    private final StringRedisTemplate redis;
+    private final RefreshTokenRepository refreshRepo;
+    private final UserRefreshTokenRepository userRefreshRepo;
+
+    /** Duración de los JWT: pasado este tiempo, ya no hace falta revocarlos */
+    @Value("${jwt.ttl:PT15M}")
+    private Duration jwtTtl;
+
+    @Autowired
+    public SessionService(
+        StringRedisTemplate redis,
+        RefreshTokenRepository refreshRepo,
+        UserRefreshTokenRepository userRefreshRepo
+    ) {
+        this.redis = redis;
+        this.refreshRepo = refreshRepo;
+        this.userRefreshRepo = userRefreshRepo;
+    }
+
+    /** Borra el refresh token del usuario, si lo tiene */
+    public void deleteRefreshTokens(String username) {
+        var optionalUrt = userRefreshRepo.findById(username);
+        optionalUrt.ifPresent(urt -> {
+            // Borrar tokens
+            refreshRepo.deleteById(urt.uuid());
+            // Borrar la entrada del usuario
+            userRefreshRepo.deleteById(urt.username());
+        });
+    }
+
+    /** Cierra todas las sesiones del usuario: refresh token y JWT emitidos */
+    public void revokeAll(String username) {
+        deleteRefreshTokens(username);
+        try {
+            redis.opsForValue().set(
+                REVOKED_PREFIX + username,
+                String.valueOf(Instant.now().getEpochSecond()),
+                jwtTtl
+            );
+        } catch (DataAccessException e) {
+            log.warn("Could not revoke JWTs of {}: {}", username, e.getMessage());
+        }
+    }
+
+    /** @return Si el JWT del usuario se emitió antes de revocar sus sesiones */
+    public boolean isRevoked(String username, Instant issuedAt) {
+        try {
+            String revokedAt = redis.opsForValue().get(REVOKED_PREFIX + username);
+            // La fecha de emisión del JWT se guarda en segundos
+            return revokedAt != null && issuedAt.getEpochSecond() <= Long.parseLong(revokedAt);
+        } catch (DataAccessException | NumberFormatException e) {
+            log.warn("Could not check revoked JWTs of {}: {}", username, e.getMessage());
+            return false;
+        }
+    }
+}
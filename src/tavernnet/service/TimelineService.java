@@ -0,0 +1,234 @@
+package tavernnet.service;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import tavernnet.model.PostView;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Posts más recientes de cada personaje, para servir la primera página de
+ * <code>GET /characters/{id}/posts</code> sin consultar el índice de MongoDB.
+ * <br/>
+ * Se guardan en una lista de Redis por personaje con sus
+ * <code>timeline.cache-size</code> posts más recientes, del más nuevo al más
+ * antiguo. Solo se guarda lo que no cambia (título, contenido y fecha): los
+ * contadores se leen aparte. La lista se crea en la primera consulta, cada
+ * post nuevo se añade al principio si ya existe, y al borrar un post se
+ * descarta entera.
+ * <br/>
+ * Cada personaje tiene además una generación, que aumenta al añadir un post o
+ * descartar la lista. Quien crea la lista lee la generación antes de consultar
+ * MongoDB, y solo la guarda si no ha cambiado: si se publica un post mientras
+ * tanto, la lista no se crea sin él.
+ * <br/>
+ * Si Redis no está disponible, todas las consultas van a MongoDB.
+ */
+@Service
+@NullMarked
+public class TimelineService {
+
+    private static final Logger log = LoggerFactory.getLogger(TimelineService.class);
+    private static final String KEY_PREFIX = "timeline:";
+    private static final String GENERATION_PREFIX = "timeline:generation:";
+
+    /**
+     * Sustituye la lista solo si la generación sigue siendo la leída.
+     * KEYS: lista y generación. ARGV: generación leída, TTL en segundos y las
+     * entradas de la lista.
+     */
+    private static final RedisScript<Long> STORE_SCRIPT = new DefaultRedisScript<>("""
+        if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then
+            return 0
+        end
+        redis.call('DEL', KEYS[1])
+        redis.call('RPUSH', KEYS[1], unpack(ARGV, 3))
+        redis.call('EXPIRE', KEYS[1], ARGV[2])
+        return 1
+        """, Long.class);
+
+    /** Datos del post que se guardan en la lista */
+    private record Entry(String id, String title, String content, String author, LocalDateTime date) {
+        static Entry of(PostView post) {
+            return new Entry(
+                post.id().toHexString(),
+                post.title(),
+                post.content(),
+                post.author().toHexString(),
+                post.date()
+            );
+        }
+
+        /** El post, con los contadores a 0 */
+        PostView toPost() {
+            return new PostView(new ObjectId(id), title, content, new ObjectId(author), date, 0, 0, 0);
+        }
+    }
+
+    private final StringRedisTemplate redis;
+    private final ObjectMapper mapper;
+
+    /** Número de posts que se guardan por personaje */
+    @Value("${timeline.cache-size:20}")
+    private int cacheSize;
+
+    /** Tiempo que se guarda cada lista */
+    @Value("${timeline.cache-ttl:PT1H}")
+    private Duration cacheTtl;
+
+    @Autowired
+    public TimelineService(StringRedisTemplate redis, ObjectMapper mapper) {
+        this.redis = redis;
+        this.mapper = mapper;
+    }
+
+    /** @return Número de posts que se guardan por personaje */
+    public int cacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @param count Número de posts a obtener.
+     * @return Los <code>count</code> posts más recientes del personaje (o
+     * todos si tiene menos), con los contadores a 0; o <code>null</code> si no
+     * están guardados o se piden más de los que se guardan.
+     */
+    public @Nullable List<PostView> recent(ObjectId characterId, int count) {
+        if (count > cacheSize) {
+            return null;
+        }
+
+        try {
+            List<String> entries = redis.opsForList().range(key(characterId), 0, count - 1);
+            if (entries == null || entries.isEmpty()) {
+                return null;
+            }
+
+            List<PostView> posts = new ArrayList<>(entries.size());
+            for (String entry : entries) {
+                posts.add(mapper.readValue(entry, Entry.class).toPost());
+            }
+            return posts;
+        } catch (DataAccessException | JacksonException e) {
+            log.warn("Could not read timeline of {}: {}", characterId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return La generación de la lista del personaje, que se debe leer antes
+     * de consultar MongoDB para {@link #store}; o <code>null</code> si Redis
+     * no está disponible.
+     */
+    public @Nullable String generation(ObjectId characterId) {
+        try {
+            String generation = redis.opsForValue().get(generationKey(characterId));
+            return generation == null ? "0" : generation;
+        } catch (DataAccessException e) {
+            log.warn("Could not read timeline generation of {}: {}", characterId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Guarda los posts más recientes del personaje, leídos de MongoDB, salvo
+     * que la lista haya cambiado desde que se leyó la generación.
+     * @param generation Generación leída con {@link #generation} antes de
+     *                   consultar MongoDB.
+     * @param newest Posts del personaje, del más nuevo al más antiguo.
+     */
+    public void store(ObjectId characterId, @Nullable String generation, List<PostView> newest) {
+        if (generation == null || newest.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<String> entries = new ArrayList<>();
+            for (PostView post : newest.subList(0, Math.min(cacheSize, newest.size()))) {
+                entries.add(mapper.writeValueAsString(Entry.of(post)));
+            }
+
+            List<String> args = new ArrayList<>(entries.size() + 2);
+            args.add(generation);
+            args.add(String.valueOf(cacheTtl.toSeconds()));
+            args.addAll(entries);
+            Long stored = redis.execute(
+                STORE_SCRIPT,
+                List.of(key(characterId), generationKey(characterId)),
+                args.toArray()
+            );
+            if (!Long.valueOf(1).equals(stored)) {
+                log.debug("Timeline of {} changed while loading it, not stored", characterId);
+            }
+        } catch (DataAccessException | JacksonException e) {
+            log.warn("Could not store timeline of {}: {}", characterId, e.getMessage());
+        }
+    }
+
+    /** Añade un post nuevo a la lista de su autor, si está guardada */
+    public void push(PostView post) {
+        try {
+            String key = key(post.author());
+            String entry = mapper.writeValueAsString(Entry.of(post));
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                // Primero la generación, para que una lista que se esté
+                // creando sin este post no se llegue a guardar
+                incrementGeneration(conn, post.author());
+                // Si la lista no existe, se creará completa en la próxima lectura
+                conn.lPushX(key, entry);
+                conn.lTrim(key, 0, cacheSize - 1);
+                return null;
+            });
+        } catch (DataAccessException | JacksonException e) {
+            // Sin el post nuevo la lista está incompleta: mejor descartarla
+            log.warn("Could not add post {} to timeline: {}", post.id(), e.getMessage());
+            evict(post.author());
+        }
+    }
+
+    /** Descarta la lista de un personaje (p. ej. al borrar uno de sus posts) */
+    public void evict(ObjectId characterId) {
+        try {
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                incrementGeneration(conn, characterId);
+                conn.del(key(characterId));
+                return null;
+            });
+        } catch (DataAccessException e) {
+            log.warn("Could not evict timeline of {}: {}", characterId, e.getMessage());
+        }
+    }
+
+    /** Solo hace falta mientras se crea la lista, así que caduca como ella */
+    private void incrementGeneration(StringRedisConnection conn, ObjectId characterId) {
+        conn.incr(generationKey(characterId));
+        conn.expire(generationKey(characterId), cacheTtl.toSeconds());
+    }
+
+    private static String key(ObjectId characterId) {
+        return KEY_PREFIX + characterId.toHexString();
+    }
+
+    private static String generationKey(ObjectId characterId) {
+        return GENERATION_PREFIX + characterId.toHexString();
+    }
+}
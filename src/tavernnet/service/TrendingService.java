@@ -0,0 +1,136 @@
+package tavernnet.service;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.zset.Aggregate;
+import org.springframework.data.redis.connection.zset.Weights;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Índice de posts en tendencia, guardado en un <i>sorted set</i> de Redis.
+ * <br/>
+ * Cada like o comentario suma un peso a la puntuación del post, y
+ * periódicamente se multiplican todas las puntuaciones por un factor de
+ * decaimiento. Así, la puntuación es una suma de interacciones que pierden
+ * valor con el tiempo, sin tener que recalcular nada a partir de MongoDB.
+ * Tras cada decaimiento se eliminan los posts que sobran, de forma que el
+ * índice nunca supera <code>trending.size</code> elementos.
+ */
+@Service
+@NullMarked
+public class TrendingService {
+
+    private static final Logger log = LoggerFactory.getLogger(TrendingService.class);
+    private static final String KEY = "trending:posts";
+    // Evita que varias instancias apliquen el decaimiento en el mismo periodo
+    private static final String DECAY_LOCK_KEY = "trending:posts:decay-lock";
+
+    private static final double LIKE_WEIGHT = 1.0;
+    private static final double COMMENT_WEIGHT = 2.0;
+    // Por debajo de esta puntuación el post ya no es relevante
+    private static final double MIN_SCORE = 0.01;
+
+    private final StringRedisTemplate redis;
+
+    /** Número máximo de posts en el índice */
+    @Value("${trending.size:1000}")
+    private int maxSize;
+
+    /** Factor por el que se multiplican las puntuaciones en cada periodo */
+    @Value("${trending.decay:0.5}")
+    private double decay;
+
+    /** Cada cuánto se aplica el decaimiento */
+    @Value("${trending.period:PT1H}")
+    private Duration period;
+
+    @Autowired
+    public TrendingService(StringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    public void bumpLikes(ObjectId postId, int likes) {
+        bump(postId, LIKE_WEIGHT * likes);
+    }
+
+    public void bumpComment(ObjectId postId) {
+        bump(postId, COMMENT_WEIGHT);
+    }
+
+    public void remove(ObjectId postId) {
+        try {
+            redis.opsForZSet().remove(KEY, postId.toHexString());
+        } catch (DataAccessException e) {
+            log.warn("Could not remove post {} from trending: {}", postId, e.getMessage());
+        }
+    }
+
+    /**
+     * @param limit Número máximo de posts.
+     * @return Identificadores de los posts en tendencia, de mayor a menor, o
+     * ninguno si Redis no está disponible.
+     */
+    public List<ObjectId> top(int limit) {
+        Set<String> ids;
+        try {
+            ids = redis.opsForZSet().reverseRange(KEY, 0, limit - 1);
+        } catch (DataAccessException e) {
+            log.warn("Could not read trending posts: {}", e.getMessage());
+            return List.of();
+        }
+        if (ids == null) {
+            return List.of();
+        }
+        return ids.stream().filter(ObjectId::isValid).map(ObjectId::new).toList();
+    }
+
+    /** Aplica el decaimiento y recorta el índice */
+    @Scheduled(
+        initialDelayString = "${trending.period:PT1H}",
+        fixedRateString = "${trending.period:PT1H}"
+    )
+    public void decay() {
+        try {
+            // Si otra instancia ya lo ha hecho en este periodo, no repetir
+            Boolean acquired = redis.opsForValue().setIfAbsent(
+                DECAY_LOCK_KEY,
+                "1",
+                period.minusSeconds(1)
+            );
+            if (!Boolean.TRUE.equals(acquired)) {
+                return;
+            }
+
+            // ZUNIONSTORE del set sobre sí mismo con un peso: multiplica todas
+            // las puntuaciones de forma atómica en un único comando
+            redis.opsForZSet().unionAndStore(KEY, List.of(), KEY, Aggregate.SUM, Weights.of(decay));
+            redis.opsForZSet().removeRangeByScore(KEY, Double.NEGATIVE_INFINITY, MIN_SCORE);
+            // Quedarse solo con los maxSize de mayor puntuación
+            Long trimmed = redis.opsForZSet().removeRange(KEY, 0, -(maxSize + 1));
+            log.debug("Trending decayed by {}, trimmed {} posts", decay, trimmed);
+        } catch (DataAccessException e) {
+            log.warn("Could not decay trending posts: {}", e.getMessage());
+        }
+    }
+
+    // NOTA: las tendencias no son críticas, así que un fallo de Redis no debe
+    // hacer fallar la operación que las actualiza
+    private void bump(ObjectId postId, double weight) {
+        try {
+            redis.opsForZSet().incrementScore(KEY, postId.toHexString(), weight);
+        } catch (DataAccessException e) {
+            log.warn("Could not update trending score of {}: {}", postId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package tavernnet.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.Validator;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import tavernnet.model.GlobalRole;
+import tavernnet.model.Job;
+import tavernnet.model.User;
+import tavernnet.repository.ArchiveRepository;
+import tavernnet.repository.UserRepository;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Alta de usuarios en bloque, para migrar una comunidad existente.
+ * <br/>
+ * Cada línea es un <code>{"username": "...", "password": "..."}</code>, igual
+ * que en <code>POST /users</code>. Se leen en lotes de
+ * <code>users.import.batch-size</code>: las contraseñas de cada lote se cifran
+ * en paralelo en un <code>ForkJoinPool</code> con un hilo por núcleo (cifrar
+ * es lo más costoso, y sin esperas de E/S no se gana nada con más hilos), y
+ * después se insertan con un único <code>insertMany</code> desordenado.
+ * <br/>
+ * Las líneas que no son válidas o cuyo usuario ya existe no detienen la
+ * importación: se devuelven en el resultado, con su número de línea.
+ */
+@Service
+@NullMarked
+public class UserImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+    /** Línea rechazada */
+    public record RejectedRow(long line, @Nullable String username, Reason reason) {}
+
+    public enum Reason {
+        // No es JSON o le falta el usuario o la contraseña
+        INVALID,
+        // Ya existe, aparece antes en el fichero o se está borrando
+        DUPLICATED,
+    }
+
+    /**
+     * Resultado de una importación.
+     * @param usersPerSecond Usuarios creados por segundo.
+     */
+    public record ImportReport(
+        long created,
+        List<RejectedRow> rejected,
+        long elapsedMillis,
+        long usersPerSecond
+    ) {}
+
+    /** Línea leída, pendiente de insertar */
+    private record Row(long line, User.LoginRequest request) {}
+
+    private final ArchiveRepository archiveRepo;
+    private final UserRepository userRepo;
+    private final PasswordEncoder passwordEncoder;
+    private final Validator validator;
+    private final ObjectMapper mapper;
+    private final JobService jobs;
+    private final UsernameIndexService usernameIndex;
+    private final ForkJoinPool hashPool;
+
+    /** Usuarios que se insertan con cada <code>insertMany</code> */
+    @Value("${users.import.batch-size:1000}")
+    private int batchSize;
+
+    @Autowired
+    public UserImportService(
+        ArchiveRepository archiveRepo,
+        UserRepository userRepo,
+        PasswordEncoder passwordEncoder,
+        Validator validator,
+        ObjectMapper mapper,
+        JobService jobs,
+        UsernameIndexService usernameIndex
+    ) {
+        this.archiveRepo = archiveRepo;
+        this.userRepo = userRepo;
+        this.passwordEncoder = passwordEncoder;
+        this.validator = validator;
+        this.mapper = mapper;
+        this.jobs = jobs;
+        this.usernameIndex = usernameIndex;
+        this.hashPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    void stop() {
+        hashPool.shutdownNow();
+    }
+
+    /** Crea los usuarios leídos, en lotes desordenados */
+    public ImportReport importFrom(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<RejectedRow> rejected = new ArrayList<>();
+        List<Row> batch = new ArrayList<>(batchSize);
+        long created = 0;
+        long start = System.nanoTime();
+
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            User.LoginRequest request = parse(line);
+            if (request == null) {
+                rejected.add(new RejectedRow(lineNumber, null, Reason.INVALID));
+                continue;
+            }
+
+            batch.add(new Row(lineNumber, request));
+            if (batch.size() == batchSize) {
+                created += insert(batch, rejected);
+                batch.clear();
+            }
+        }
+        created += insert(batch, rejected);
+
+        long elapsed = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        ImportReport report = new ImportReport(created, rejected, elapsed, created * 1000 / elapsed);
+        log.info("Imported {} users in {} ms ({} users/s), rejected {}",
+            created, elapsed, report.usersPerSecond(), rejected.size());
+        return report;
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    /** @return Número de usuarios creados */
+    private long insert(List<Row> batch, List<RejectedRow> rejected) {
+        // Los nombres de usuarios que se están borrando aún no están libres
+        Set<String> deleting = jobs.activeTargets(
+            Job.Type.USER_CASCADE,
+            batch.stream().map(row -> row.request().username()).toList()
+        );
+        List<Row> rows = new ArrayList<>(batch.size());
+        for (Row row : batch) {
+            if (deleting.contains(row.request().username())) {
+                rejected.add(new RejectedRow(row.line(), row.request().username(), Reason.DUPLICATED));
+            } else {
+                rows.add(row);
+            }
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        // Un stream paralelo lanzado desde el pool se ejecuta en sus hilos
+        LocalDateTime now = LocalDateTime.now();
+        List<User> users = hashPool.submit(() -> rows.parallelStream()
+            .map(row -> new User(
+                row.request().username(),
+                Objects.requireNonNull(passwordEncoder.encode(row.request().password())),
+                GlobalRole.USER,
+                now
+            ))
+            .toList()
+        ).join();
+
+        Set<Integer> duplicated = archiveRepo.insertUsers(users);
+        List<String> inserted = new ArrayList<>(users.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            if (duplicated.contains(i)) {
+                rejected.add(new RejectedRow(row.line(), row.request().username(), Reason.DUPLICATED));
+            } else {
+                inserted.add(row.request().username());
+            }
+        }
+
+        // Como en UserService.createUser: comprobarlo también después de
+        // insertar, por si se empezó a borrar uno de estos nombres a la vez
+        Set<String> deleted = jobs.activeTargets(Job.Type.USER_CASCADE, inserted);
+        if (!deleted.isEmpty()) {
+            userRepo.deleteAllById(deleted);
+            for (int i = 0; i < rows.size(); i++) {
+                Row row = rows.get(i);
+                if (deleted.contains(row.request().username()) && !duplicated.contains(i)) {
+                    rejected.add(new RejectedRow(row.line(), row.request().username(), Reason.DUPLICATED));
+                }
+            }
+            inserted.removeAll(deleted);
+        }
+
+        usernameIndex.addAll(inserted);
+        return inserted.size();
+    }
+
+    /** @return La petición de la línea, o <code>null</code> si no es válida */
+    private User.@Nullable LoginRequest parse(String line) {
+        try {
+            User.LoginRequest request = mapper.readValue(line, User.LoginRequest.class);
+            return validator.validate(request).isEmpty() ? request : null;
+        } catch (JacksonException e) {
+            return null;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import org.jspecify.annotations.NullMarked;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -11,7 +13,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.regex.Pattern;
 
@@ -28,33 +30,79 @@ public class UserService implements UserDetailsService {
 
     private final PasswordEncoder passwordEncoder;
     private final UserRepository userRepo;
-    private final CharacterRepository charRepo;
-    private final UserRefreshTokenRepository userRefreshRepo;
-    private final RefreshTokenRepository refreshRepo;
+    private final SessionService sessions;
+    private final JobService jobs;
+    private final ResponseCacheService responseCache;
+    private final UsernameIndexService usernameIndex;
+    private final ProfileService profiles;
+
+    /** Máximo de resultados que se cuentan con <code>count_mode=estimated</code> */
+    @Value("${users.search.count-cap:1000}")
+    private int countCap;
 
     @Autowired
     public UserService(
         PasswordEncoder passwordEncoder,
         UserRepository userRepo,
-        CharacterRepository charRepo,
-        UserRefreshTokenRepository userRefreshRepo,
-        RefreshTokenRepository refreshRepo
+        SessionService sessions,
+        JobService jobs,
+        ResponseCacheService responseCache,
+        UsernameIndexService usernameIndex,
+        ProfileService profiles
     ) {
         this.passwordEncoder = passwordEncoder;
         this.userRepo = userRepo;
-        this.charRepo = charRepo;
-        this.userRefreshRepo = userRefreshRepo;
-        this.refreshRepo = refreshRepo;
+        this.sessions = sessions;
+        this.jobs = jobs;
+        this.responseCache = responseCache;
+        this.usernameIndex = usernameIndex;
+        this.profiles = profiles;
     }
 
-    public Pagination<String> getUsers(String searchTerm, int pageNumber, int pageSize) {
-        log.debug("GET /users search={} page={} count={}", searchTerm, pageNumber, pageSize);
-        var root = userRepo.searchByUsernameWithCount(
-            Pattern.quote(searchTerm),
-             pageNumber*pageSize,
-             pageSize
-        );
-        return Pagination.from(root, pageNumber);
+    public Pagination<String> getUsers(
+        String searchTerm,
+        int pageNumber,
+        int pageSize,
+        Pagination.CountMode countMode
+    ) {
+        // Los espacios de los extremos no forman parte de ningún nombre
+        searchTerm = searchTerm.strip();
+        log.debug("GET /users search={} page={} count={} count_mode={}",
+            searchTerm, pageNumber, pageSize, countMode);
+        // El índice de Redis ya tiene el recuento exacto, sin coste adicional
+        Pagination<String> indexed = usernameIndex.search(searchTerm, pageNumber, pageSize);
+        if (indexed != null) {
+            return indexed;
+        }
+
+        // Sin el índice de Redis: recorrer la colección
+        String regex = Pattern.quote(searchTerm);
+        List<String> page = userRepo.searchByUsername(regex, searchTerm, pageNumber * pageSize, pageSize);
+
+        // Contar todos los resultados cuesta tanto como la búsqueda entera:
+        // según el modo, se limita o se reutiliza un recuento reciente
+        return switch (countMode) {
+            case EXACT -> new Pagination<>(page, pageNumber, countExact(regex, searchTerm), countMode);
+            case ESTIMATED -> {
+                Long counted = userRepo.countByUsernameUpTo(regex, countCap);
+                int total = counted == null ? 0 : counted.intValue();
+                yield new Pagination<>(page, pageNumber, total,
+                    total >= countCap ? countMode : Pagination.CountMode.EXACT);
+            }
+            case CACHED -> {
+                Integer cached = usernameIndex.cachedCount(searchTerm);
+                yield cached != null
+                    ? new Pagination<>(page, pageNumber, cached, countMode)
+                    : new Pagination<>(page, pageNumber, countExact(regex, searchTerm), Pagination.CountMode.EXACT);
+            }
+        };
+    }
+
+    /** Cuenta todos los resultados y guarda el recuento para reutilizarlo */
+    private int countExact(String regex, String searchTerm) {
+        int total = (int) userRepo.countByUsername(regex);
+        usernameIndex.cacheCount(searchTerm, total);
+        return total;
     }
 
     public void createUser(
@@ -71,41 +119,75 @@ public class UserService implements UserDetailsService {
             LocalDateTime.now()
         );
 
-        userRepo.save(user);
+        try {
+            userRepo.save(user);
+        } catch (DuplicateKeyException e) {
+            // Otra petición lo ha creado a la vez
+            throw new DuplicatedResourceException(newUser, "User", newUser.username());
+        }
+
+        // Mientras se borran los datos de un usuario anterior con el mismo
+        // nombre, también se borrarían los personajes del nuevo. Se comprueba
+        // después de insertarlo porque deleteUser guarda la tarea antes de
+        // borrar: o la tarea se ve aquí, o se creó después de insertar y el
+        // usuario borrado es este
+        if (jobs.isActive(Job.Type.USER_CASCADE, newUser.username())) {
+            userRepo.deleteById(newUser.username());
+            throw new DuplicatedResourceException(newUser, "User", newUser.username());
+        }
+
+        usernameIndex.add(user.getUsername());
         log.debug("POST /users new user=\"{}\"", newUser.username());
     }
 
     public User.PublicProfile getUser(String username) throws ResourceNotFoundException {
-        User user = userRepo
-            .findById(username)
-            .orElseThrow(() -> new ResourceNotFoundException("User", username));
-
-        // Obtener los personajes de este usuario
-        Collection<Character> characters = charRepo.getCharactersByUser(username);
-        log.debug("GET /users/{} with {} characters", username, characters.size());
+        log.debug("GET /users/{}", username);
+        return profiles.get(username).profile();
+    }
 
-        return new User.PublicProfile(user, characters);
+    /**
+     * ETag de {@link #getUser}: depende del usuario y de sus personajes, y se
+     * guarda junto con el perfil.
+     * @throws ResourceNotFoundException Si el usuario no existe.
+     */
+    public String getUserETag(String username) throws ResourceNotFoundException {
+        return profiles.get(username).etag();
     }
 
     /**
-     * @param username Identificador del post a borrar
+     * Borra la cuenta y cierra sus sesiones al momento. Sus personajes, con
+     * sus posts, comentarios y likes, se borran después en segundo plano.
+     * @param username Identificador del usuario a borrar
+     * @param submitter Usuario que lo pide, que podrá consultar la tarea.
+     * @return Tarea que borra los datos del usuario.
      * @throws ResourceNotFoundException Si el ID no existe
      */
-    public void deleteUser(String username) throws ResourceNotFoundException {
-        userRepo
-            .deleteUserById(username)
-            .orElseThrow(() -> new ResourceNotFoundException("User", username));
+    public Job deleteUser(String username, String submitter) throws ResourceNotFoundException {
+        if (!userRepo.existsById(username)) {
+            throw new ResourceNotFoundException("User", username);
+        }
+
+        // Puede tener muchos datos: se borran en lotes en una tarea
+        // persistente. Se guarda antes de borrar el usuario para que, si el
+        // servidor se cae a mitad, la tarea termine el borrado, y para que
+        // createUser no reutilice el nombre mientras tanto
+        Job job = jobs.hold(Job.Type.USER_CASCADE, username, submitter);
+        if (userRepo.deleteUserById(username).isEmpty()) {
+            // Otra petición lo ha borrado a la vez
+            jobs.cancel(job);
+            throw new ResourceNotFoundException("User", username);
+        }
         log.debug("DELETE /users/{} deleted user", username);
 
-        // También borrar la sesión del usuario para que no queden sesiones "zombie"
-        var optionalUrt = userRefreshRepo.findById(username);
-        optionalUrt.ifPresent(urt -> {
-            // Borrar tokens
-            refreshRepo.deleteById(urt.uuid());
-            // Borrar la entrada del usuario
-            userRefreshRepo.deleteById(urt.username());
-        });
-        log.debug("DELETE /users/{} deleted user's refresh tokens", username);
+        // También cerrar las sesiones del usuario para que no queden sesiones "zombie"
+        sessions.revokeAll(username);
+        log.debug("DELETE /users/{} revoked user's sessions", username);
+
+        usernameIndex.remove(username);
+        responseCache.invalidateUser(username);
+        profiles.evict(username);
+        jobs.start(job);
+        return job;
     }
 
     // Necesario para que Spring sepa como obtener usuarios de la BD
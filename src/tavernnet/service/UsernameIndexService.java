@@ -0,0 +1,349 @@
+package tavernnet.service;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import tavernnet.model.Pagination;
+import tavernnet.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+/**
+ * Índice en Redis para buscar usuarios por nombre (<code>GET /users?search=</code>).
+ * <br/>
+ * Todos los nombres se guardan en un <i>sorted set</i> con la misma
+ * puntuación, de forma que quedan en orden lexicográfico y los que empiezan
+ * por un texto son un rango contiguo (<code>ZRANGEBYLEX</code>). Para buscar
+ * en cualquier posición, cada fragmento de 1 a {@value #GRAM} caracteres de
+ * cada nombre tiene otro <i>sorted set</i> con los nombres que lo contienen:
+ * un texto corto se busca directamente en el suyo, y uno largo en la
+ * intersección de sus trigramas, comprobando después que aparece entero.
+ * <br/>
+ * Los resultados son los mismos que la búsqueda en MongoDB: primero el nombre
+ * exacto y los que empiezan por el texto, y después el resto de los que lo
+ * contienen, cada grupo en orden alfabético.
+ * <br/>
+ * El índice se construye al arrancar si no existe, y se mantiene al crear y
+ * borrar usuarios. Cada búsqueda comprueba, en el mismo pipeline, que sigue
+ * la marca de índice completo: si Redis la ha perdido (p. ej. al reiniciarse
+ * sin persistencia), se vuelve a construir. Hasta que está listo, o si Redis
+ * no está disponible, se busca en MongoDB; el recuento de esas búsquedas
+ * también se guarda aquí durante <code>users.search.count-ttl</code>.
+ */
+@Service
+@NullMarked
+public class UsernameIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(UsernameIndexService.class);
+    private static final String NAMES_KEY = "users:names";
+    private static final String GRAM_PREFIX = "users:grams:";
+    // Marca que el índice está completo
+    private static final String READY_KEY = "users:names:ready";
+    // Longitud máxima de los fragmentos indexados
+    private static final int GRAM = 3;
+    // Nombres que se indexan en cada pipeline al construir el índice
+    private static final int BUILD_BATCH = 1000;
+    // Mayor que cualquier carácter que pueda seguir al texto buscado
+    private static final String MAX_CHAR = String.valueOf(Character.MAX_VALUE);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+    // Recuentos de las búsquedas en MongoDB
+    private static final String COUNT_PREFIX = "users:count:";
+
+    /** Parte de los resultados, ya ordenada */
+    private record Segment(long size, BiFunction<Integer, Integer, Collection<String>> read) {}
+
+    private final StringRedisTemplate redis;
+    private final UserRepository userRepo;
+    private volatile boolean ready = false;
+    // Solo se construye el índice en un hilo a la vez
+    private final AtomicBoolean building = new AtomicBoolean(false);
+    // Usuarios borrados mientras se construye, que se vuelven a quitar al
+    // terminar por si se leyeron de MongoDB antes de borrarlos
+    private final Set<String> removedWhileBuilding = ConcurrentHashMap.newKeySet();
+
+    /** Tiempo durante el que se reutiliza el recuento de una búsqueda */
+    @Value("${users.search.count-ttl:PT30S}")
+    private Duration countTtl;
+
+    @Autowired
+    public UsernameIndexService(StringRedisTemplate redis, UserRepository userRepo) {
+        this.redis = redis;
+        this.userRepo = userRepo;
+    }
+
+    /** La construcción se hace en segundo plano para no retrasar el arranque */
+    @EventListener(ApplicationReadyEvent.class)
+    void startWarmUp() {
+        rebuild();
+    }
+
+    /**
+     * @return La página de usuarios cuyo nombre contiene el texto, o
+     * <code>null</code> si el índice no está disponible.
+     */
+    public @Nullable Pagination<String> search(String term, int pageNumber, int pageSize) {
+        if (!ready) {
+            return null;
+        }
+
+        try {
+            Range<String> prefix = term.isEmpty()
+                ? Range.unbounded()
+                : Range.rightOpen(term, term + MAX_CHAR);
+            List<Range<String>> ranges = new ArrayList<>();
+            ranges.add(prefix);
+
+            // Fragmento corto: su sorted set tiene justo los que lo contienen.
+            // Los que empiezan por el texto ya están en el primer grupo, y en
+            // orden alfabético son un rango: se toma lo de antes y lo de después
+            int length = term.codePointCount(0, term.length());
+            String gramKey = GRAM_PREFIX + term;
+            boolean shortTerm = length > 0 && length <= GRAM;
+            if (shortTerm) {
+                ranges.add(Range.<String>leftUnbounded(Range.Bound.exclusive(term)));
+                ranges.add(Range.<String>rightUnbounded(Range.Bound.inclusive(term + MAX_CHAR)));
+            }
+
+            List<Object> results = redis.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.exists(READY_KEY);
+                conn.zLexCount(NAMES_KEY, ranges.getFirst());
+                ranges.subList(1, ranges.size()).forEach(range -> conn.zLexCount(gramKey, range));
+                return null;
+            });
+
+            // Sin la marca, el índice puede estar incompleto o vacío
+            if (!Boolean.TRUE.equals(results.getFirst())) {
+                log.warn("Username index marker is missing, rebuilding");
+                ready = false;
+                rebuild();
+                return null;
+            }
+            List<Object> counts = results.subList(1, results.size());
+
+            List<Segment> segments = new ArrayList<>();
+            segments.add(new Segment((Long) counts.getFirst(), (offset, count) -> redis.opsForZSet()
+                .rangeByLex(NAMES_KEY, prefix, Limit.limit().offset(offset).count(count))));
+            if (shortTerm) {
+                for (int i = 1; i < ranges.size(); i++) {
+                    Range<String> range = ranges.get(i);
+                    segments.add(new Segment((Long) counts.get(i), (offset, count) -> redis.opsForZSet()
+                        .rangeByLex(gramKey, range, Limit.limit().offset(offset).count(count))));
+                }
+            } else if (length > GRAM) {
+                List<String> others = containing(term);
+                segments.add(new Segment(others.size(), (offset, count) ->
+                    others.subList(offset, Math.min(others.size(), offset + count))));
+            }
+
+            return page(segments, pageNumber, pageSize);
+        } catch (DataAccessException e) {
+            log.warn("Could not search username index: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public void add(String username) {
+        addAll(List.of(username));
+    }
+
+    /** Añade varios usuarios en un único pipeline */
+    public void addAll(Collection<String> usernames) {
+        if (usernames.isEmpty()) {
+            return;
+        }
+
+        try {
+            index(usernames);
+        } catch (DataAccessException e) {
+            log.warn("Could not add {} users to username index: {}", usernames.size(), e.getMessage());
+        }
+    }
+
+    public void remove(String username) {
+        if (building.get()) {
+            removedWhileBuilding.add(username);
+        }
+        try {
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.zRem(NAMES_KEY, username);
+                grams(username).forEach(gram -> conn.zRem(GRAM_PREFIX + gram, username));
+                return null;
+            });
+        } catch (DataAccessException e) {
+            log.warn("Could not remove {} from username index: {}", username, e.getMessage());
+        }
+    }
+
+    /**
+     * @return El número de resultados de una búsqueda en MongoDB, guardado con
+     * {@link #cacheCount}; o <code>null</code> si no está guardado o ha caducado.
+     */
+    public @Nullable Integer cachedCount(String term) {
+        try {
+            String count = redis.opsForValue().get(countKey(term));
+            return count == null ? null : Integer.valueOf(count);
+        } catch (DataAccessException | NumberFormatException e) {
+            log.warn("Could not read user count of '{}': {}", term, e.getMessage());
+            return null;
+        }
+    }
+
+    /** Guarda el número de resultados de una búsqueda en MongoDB */
+    public void cacheCount(String term, int count) {
+        try {
+            redis.opsForValue().set(countKey(term), String.valueOf(count), countTtl);
+        } catch (DataAccessException e) {
+            log.warn("Could not store user count of '{}': {}", term, e.getMessage());
+        }
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    /** La misma búsqueda con espacios de más comparte el recuento */
+    private static String countKey(String term) {
+        return COUNT_PREFIX + term.strip();
+    }
+
+    private void index(Collection<String> usernames) {
+        redis.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String username : usernames) {
+                conn.zAdd(NAMES_KEY, 0, username);
+                grams(username).forEach(gram -> conn.zAdd(GRAM_PREFIX + gram, 0, username));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Nombres que contienen un texto de más de {@value #GRAM} caracteres sin
+     * empezar por él: los que tienen todos sus trigramas, comprobando que
+     * aparece entero.
+     */
+    private List<String> containing(String term) {
+        List<String> keys = grams(term).stream()
+            .filter(gram -> gram.codePointCount(0, gram.length()) == GRAM)
+            .map(gram -> GRAM_PREFIX + gram)
+            .toList();
+        Set<String> candidates = redis.opsForZSet().intersect(keys.getFirst(), keys.subList(1, keys.size()));
+        if (candidates == null) {
+            return List.of();
+        }
+
+        // ZINTER devuelve los nombres en orden alfabético (misma puntuación)
+        return candidates.stream()
+            .filter(name -> name.contains(term) && !name.startsWith(term))
+            .toList();
+    }
+
+    /** Página dentro de los grupos de resultados, leyendo solo lo necesario */
+    private static Pagination<String> page(List<Segment> segments, int pageNumber, int pageSize) {
+        List<String> page = new ArrayList<>(pageSize);
+        long total = 0;
+        long skip = (long) pageNumber * pageSize;
+        for (Segment segment : segments) {
+            total += segment.size();
+            if (page.size() == pageSize) {
+                continue;
+            }
+            if (skip >= segment.size()) {
+                skip -= segment.size();
+                continue;
+            }
+            page.addAll(segment.read().apply((int) skip, pageSize - page.size()));
+            skip = 0;
+        }
+        return new Pagination<>(page, pageNumber, (int) total, Pagination.CountMode.EXACT);
+    }
+
+    /** Fragmentos distintos de 1 a {@value #GRAM} caracteres del texto */
+    private static Set<String> grams(String text) {
+        int[] codePoints = text.codePoints().toArray();
+        Set<String> grams = new LinkedHashSet<>();
+        for (int start = 0; start < codePoints.length; start++) {
+            for (int n = 1; n <= GRAM && start + n <= codePoints.length; n++) {
+                grams.add(new String(codePoints, start, n));
+            }
+        }
+        return grams;
+    }
+
+    /** Construye el índice en segundo plano, si no se está construyendo ya */
+    private void rebuild() {
+        if (building.compareAndSet(false, true)) {
+            removedWhileBuilding.clear();
+            Thread.ofVirtual().name("username-index-warmup").start(() -> {
+                try {
+                    warmUp();
+                } finally {
+                    building.set(false);
+                }
+            });
+        }
+    }
+
+    private void warmUp() {
+        while (true) {
+            try {
+                if (Boolean.TRUE.equals(redis.hasKey(READY_KEY))) {
+                    ready = true;
+                    return;
+                }
+
+                long start = System.nanoTime();
+                long count = 0;
+                List<String> batch = new ArrayList<>(BUILD_BATCH);
+                try (Stream<String> usernames = userRepo.streamUsernames()) {
+                    Iterator<String> it = usernames.iterator();
+                    while (it.hasNext()) {
+                        batch.add(it.next());
+                        if (batch.size() == BUILD_BATCH || !it.hasNext()) {
+                            index(batch);
+                            count += batch.size();
+                            batch.clear();
+                        }
+                    }
+                }
+                removedWhileBuilding.forEach(this::remove);
+                redis.opsForValue().set(READY_KEY, "1");
+                ready = true;
+                log.info("Username index built: {} users in {} ms",
+                    count, Duration.ofNanos(System.nanoTime() - start).toMillis());
+                return;
+
+            } catch (DataAccessException e) {
+                log.warn("Could not build username index, retrying: {}", e.getMessage());
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
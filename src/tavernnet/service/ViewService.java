@@ -0,0 +1,147 @@
+package tavernnet.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tavernnet.repository.PostCountersRepository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Número de visitas únicas de cada post (<code>n_views</code>).
+ * <br/>
+ * Cada <code>GET /posts/{postid}</code> añade al visitante (el usuario
+ * autenticado, o su IP y <code>User-Agent</code>) a un <i>HyperLogLog</i> de
+ * Redis por post, que estima el número de elementos distintos con un error de
+ * ~0.8% y ocupa como mucho 12 KB sin importar cuántas visitas reciba. Con el
+ * mismo <i>pipeline</i> el post se marca como pendiente, y periódicamente se
+ * copia su <code>PFCOUNT</code> al documento del post.
+ */
+@Service
+@NullMarked
+public class ViewService {
+
+    private static final Logger log = LoggerFactory.getLogger(ViewService.class);
+    private static final String KEY_PREFIX = "views:";
+    // Posts con visitas pendientes de pasar a MongoDB
+    private static final String DIRTY_KEY = "views:dirty";
+    // Número de posts que se consolidan en cada operación bulk
+    private static final int FLUSH_BATCH = 500;
+
+    private final StringRedisTemplate redis;
+    private final PostCountersRepository countersRepo;
+
+    @Autowired
+    public ViewService(StringRedisTemplate redis, PostCountersRepository countersRepo) {
+        this.redis = redis;
+        this.countersRepo = countersRepo;
+    }
+
+    /**
+     * Registra una visita al post. Si Redis no está disponible, la visita se
+     * pierde, pero la consulta no falla.
+     * @param username Usuario autenticado, o <code>null</code> para
+     *                 identificar al visitante por su IP y navegador.
+     */
+    public void record(ObjectId postId, @Nullable String username, HttpServletRequest request) {
+        String viewer = username != null
+            ? "user:" + username
+            : "anon:" + request.getRemoteAddr() + ":" + request.getHeader(HttpHeaders.USER_AGENT);
+
+        try {
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.pfAdd(key(postId), viewer);
+                conn.sAdd(DIRTY_KEY, postId.toHexString());
+                return null;
+            });
+        } catch (DataAccessException e) {
+            log.warn("Could not record view of post {}: {}", postId, e.getMessage());
+        }
+    }
+
+    /** Descarta las visitas de un post borrado */
+    public void remove(ObjectId postId) {
+        try {
+            redis.delete(key(postId));
+            redis.opsForSet().remove(DIRTY_KEY, postId.toHexString());
+        } catch (DataAccessException e) {
+            log.warn("Could not remove views of post {}: {}", postId, e.getMessage());
+        }
+    }
+
+    /**
+     * Copia el número de visitantes de los posts pendientes a MongoDB. Varias
+     * instancias pueden ejecutarlo a la vez, ya que cada post se saca del
+     * conjunto de pendientes de forma atómica, y el valor nunca disminuye.
+     */
+    @Scheduled(
+        initialDelayString = "${views.flush-interval:PT1M}",
+        fixedDelayString = "${views.flush-interval:PT1M}"
+    )
+    public void flush() {
+        try {
+            // Si falla MongoDB, los posts vuelven a quedar pendientes: esperar
+            // al siguiente periodo en lugar de reintentar sin pausa
+            List<String> dirty;
+            boolean flushed = true;
+            while (flushed
+                && (dirty = redis.opsForSet().pop(DIRTY_KEY, FLUSH_BATCH)) != null
+                && !dirty.isEmpty()
+            ) {
+                flushed = flush(dirty.stream().filter(ObjectId::isValid).map(ObjectId::new).toList());
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not flush views: {}", e.getMessage());
+        }
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    /** @return <code>false</code> si no se han podido escribir en MongoDB */
+    private boolean flush(List<ObjectId> postIds) {
+        List<Object> counts = redis.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            postIds.forEach(postId -> conn.pfCount(key(postId)));
+            return null;
+        });
+
+        Map<ObjectId, Long> views = new HashMap<>();
+        for (int i = 0; i < postIds.size(); i++) {
+            if (counts.get(i) instanceof Long count && count > 0) {
+                views.put(postIds.get(i), count);
+            }
+        }
+
+        try {
+            countersRepo.setViews(views);
+            log.debug("Flushed views of {} posts", views.size());
+            return true;
+        } catch (DataAccessException e) {
+            // Volver a marcarlos como pendientes para el siguiente intento
+            log.error("Could not flush views of {} posts, retrying: {}", views.size(), e.getMessage());
+            String[] ids = views.keySet().stream().map(ObjectId::toHexString).toArray(String[]::new);
+            if (ids.length > 0) {
+                redis.opsForSet().add(DIRTY_KEY, ids);
+            }
+            return false;
+        }
+    }
+
+    private static String key(ObjectId postId) {
+        return KEY_PREFIX + postId.toHexString();
+    }
+}
@@ -0,0 +1,94 @@
+package tavernnet.service.feed;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import tavernnet.model.Comment;
+import tavernnet.model.PostView;
+import tavernnet.repository.CommentsRepository;
+import tavernnet.repository.LikesRepository;
+import tavernnet.repository.PostsViewRepository;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Igual que {@link EngagementRanker}, pero da prioridad a los autores con los
+ * que el personaje activo ha interactuado recientemente (likes y comentarios).
+ * Sin personaje activo, se comporta igual que <code>engagement</code>.
+ */
+@Component
+@NullMarked
+public class AffinityRanker implements FeedRanker {
+    public static final String NAME = "affinity";
+
+    // Número de interacciones recientes del personaje que se tienen en cuenta
+    private static final int RECENT_INTERACTIONS = 200;
+    // Multiplicador por cada interacción con el autor
+    private static final double AFFINITY_WEIGHT = 0.5;
+
+    private final LikesRepository likesRepo;
+    private final CommentsRepository commentRepo;
+    private final PostsViewRepository postsViewRepo;
+
+    @Autowired
+    public AffinityRanker(
+        LikesRepository likesRepo,
+        CommentsRepository commentRepo,
+        PostsViewRepository postsViewRepo
+    ) {
+        this.likesRepo = likesRepo;
+        this.commentRepo = commentRepo;
+        this.postsViewRepo = postsViewRepo;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public ToDoubleFunction<PostView> scorer(@Nullable ObjectId activeCharacter, LocalDateTime now) {
+        Map<ObjectId, Integer> affinity = activeCharacter == null
+            ? Map.of()
+            : authorAffinity(activeCharacter);
+
+        return post -> EngagementRanker.score(post, now)
+            * (1.0 + AFFINITY_WEIGHT * affinity.getOrDefault(post.author(), 0));
+    }
+
+    /**
+     * @return Número de interacciones del personaje con cada autor, a partir
+     * de sus últimos likes y comentarios. Son 3 consultas acotadas por índice.
+     */
+    private Map<ObjectId, Integer> authorAffinity(ObjectId character) {
+        Map<ObjectId, Integer> interactions = new HashMap<>();
+        likesRepo
+            .findRecentLikedPosts(character, RECENT_INTERACTIONS)
+            .forEach(post -> interactions.merge(post, 1, Integer::sum));
+        commentRepo
+            .findRecentByAuthor(character, PageRequest.ofSize(RECENT_INTERACTIONS))
+            .stream()
+            .map(Comment::post)
+            .forEach(post -> interactions.merge(post, 1, Integer::sum));
+
+        if (interactions.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<ObjectId, Integer> affinity = new HashMap<>();
+        for (PostView post : postsViewRepo.findAuthorsOf(interactions.keySet())) {
+            // Interactuar con uno mismo no cuenta
+            if (character.equals(post.author())) {
+                continue;
+            }
+            affinity.merge(post.author(), interactions.get(post.id()), Integer::sum);
+        }
+        return affinity;
+    }
+}
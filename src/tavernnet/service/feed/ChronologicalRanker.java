@@ -0,0 +1,33 @@
+package tavernnet.service.feed;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.stereotype.Component;
+import tavernnet.model.PostView;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.function.ToDoubleFunction;
+
+/** Los posts más recientes primero. Es el algoritmo por defecto. */
+@Component
+@NullMarked
+public class ChronologicalRanker implements FeedRanker {
+    public static final String NAME = "chronological";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isChronological() {
+        return true;
+    }
+
+    @Override
+    public ToDoubleFunction<PostView> scorer(@Nullable ObjectId activeCharacter, LocalDateTime now) {
+        return post -> post.date().toEpochSecond(ZoneOffset.UTC);
+    }
+}
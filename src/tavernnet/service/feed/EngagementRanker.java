@@ -0,0 +1,43 @@
+package tavernnet.service.feed;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.stereotype.Component;
+import tavernnet.model.PostView;
+
+import java.time.LocalDateTime;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Posts con más interacciones primero, penalizando su antigüedad para que el
+ * feed se renueve (similar a la fórmula de Hacker News):
+ * <pre>
+ *   score = (likes + 2 * comentarios + 1) / (horas + 2) ^ 1.5
+ * </pre>
+ */
+@Component
+@NullMarked
+public class EngagementRanker implements FeedRanker {
+    public static final String NAME = "engagement";
+
+    // Un comentario supone más esfuerzo que un like
+    private static final double COMMENT_WEIGHT = 2.0;
+    // Cuanto mayor, más rápido caen los posts antiguos
+    private static final double GRAVITY = 1.5;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public ToDoubleFunction<PostView> scorer(@Nullable ObjectId activeCharacter, LocalDateTime now) {
+        return post -> score(post, now);
+    }
+
+    static double score(PostView post, LocalDateTime now) {
+        double engagement = post.nLikes() + COMMENT_WEIGHT * post.nComments() + 1.0;
+        return engagement / Math.pow(FeedRanker.ageInHours(post, now) + 2.0, GRAVITY);
+    }
+}
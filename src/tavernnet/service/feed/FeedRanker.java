@@ -0,0 +1,52 @@
+package tavernnet.service.feed;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import tavernnet.model.PostView;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Estrategia para ordenar el feed de <code>GET /posts</code>. Cada
+ * implementación registrada como <code>@Component</code> se puede seleccionar
+ * con el parámetro <code>?algorithm=</code> usando su {@link #name()}.
+ * <br/>
+ * Las estrategias no consultan toda la colección: solo puntúan un conjunto
+ * acotado de candidatos (los más recientes y los de más interacciones), que
+ * obtiene <code>PostService</code>.
+ */
+@NullMarked
+public interface FeedRanker {
+    /** Nombre de la estrategia en la petición */
+    String name();
+
+    /**
+     * Si es <code>true</code>, el orden es el del índice <code>{date, _id}</code>
+     * y el feed se pagina por cursor sobre toda la colección, en lugar de
+     * puntuar candidatos.
+     */
+    default boolean isChronological() {
+        return false;
+    }
+
+    /**
+     * Prepara la función de puntuación para una petición concreta. Aquí se
+     * pueden cargar los datos que necesite la estrategia una única vez por
+     * página, y no por cada post.
+     * @param activeCharacter Personaje activo del usuario, si lo hay.
+     * @param now Momento de referencia para calcular la antigüedad.
+     * @return Puntuación de cada post: mayor significa más arriba en el feed.
+     */
+    ToDoubleFunction<PostView> scorer(@Nullable ObjectId activeCharacter, LocalDateTime now);
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    /** Antigüedad del post en horas, nunca negativa */
+    static double ageInHours(PostView post, LocalDateTime now) {
+        double minutes = Duration.between(post.date(), now).toMinutes();
+        return Math.max(0.0, minutes / 60.0);
+    }
+}
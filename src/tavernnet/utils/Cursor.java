@@ -0,0 +1,97 @@
+package tavernnet.utils;
+
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import tavernnet.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Codificación de los cursores de paginación. Para el cliente son opacos: es
+ * la clave de ordenación del último elemento devuelto codificada en Base64, de
+ * forma que la siguiente página es un rango sobre un índice y no necesita
+ * <code>$skip</code>.
+ */
+@NullMarked
+public final class Cursor {
+    private static final String SEPARATOR = "|";
+
+    private Cursor() {}
+
+    public static String encode(String... parts) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+            String.join(SEPARATOR, parts).getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * @param cursor Cursor recibido del cliente.
+     * @param expectedParts Número de campos que debe tener.
+     * @return Los campos del cursor.
+     * @throws InvalidCursorException Si no se ha generado con {@link #encode}.
+     */
+    public static String[] decode(
+        String cursor,
+        int expectedParts
+    ) throws InvalidCursorException {
+        try {
+            String raw = new String(
+                Base64.getUrlDecoder().decode(cursor),
+                StandardCharsets.UTF_8
+            );
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != expectedParts) {
+                throw new InvalidCursorException(cursor);
+            }
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+
+    // ==== CURSORES CONCRETOS =================================================
+
+    /** Posición en un índice <code>{ date, _id }</code> */
+    public record Keyset(LocalDateTime date, ObjectId id) {
+        public String encode() {
+            return Cursor.encode(date.toString(), id.toHexString());
+        }
+
+        public static Keyset decode(String cursor) throws InvalidCursorException {
+            String[] parts = Cursor.decode(cursor, 2);
+            if (!ObjectId.isValid(parts[1])) {
+                throw new InvalidCursorException(cursor);
+            }
+
+            try {
+                return new Keyset(LocalDateTime.parse(parts[0]), new ObjectId(parts[1]));
+            } catch (DateTimeParseException e) {
+                throw new InvalidCursorException(cursor);
+            }
+        }
+    }
+
+    /** Posición en un orden por relevancia <code>{ score, _id }</code> */
+    public record Scored(double score, ObjectId id) {
+        public String encode() {
+            // Double.toString se puede volver a leer sin perder precisión
+            return Cursor.encode(Double.toString(score), id.toHexString());
+        }
+
+        public static Scored decode(String cursor) throws InvalidCursorException {
+            String[] parts = Cursor.decode(cursor, 2);
+            if (!ObjectId.isValid(parts[1])) {
+                throw new InvalidCursorException(cursor);
+            }
+
+            try {
+                return new Scored(Double.parseDouble(parts[0]), new ObjectId(parts[1]));
+            } catch (NumberFormatException e) {
+                throw new InvalidCursorException(cursor);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package tavernnet.utils;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Cálculo de ETags fuertes a partir de las versiones de los documentos, sin
+ * serializar la respuesta. El ETag es un resumen de todo lo que determina el
+ * cuerpo (versiones, contadores, etc.), de forma que cambia si y solo si
+ * cambia alguno de ellos.
+ */
+@NullMarked
+public final class ETags {
+    private static final char SEPARATOR = '|';
+    // Suficiente para que no haya colisiones entre versiones del mismo recurso
+    private static final int LENGTH = 12;
+
+    private ETags() {}
+
+    /** @param parts Valores de los que depende la respuesta, en orden. */
+    public static String of(@Nullable Object... parts) {
+        StringBuilder input = new StringBuilder();
+        for (Object part : parts) {
+            input.append(part).append(SEPARATOR);
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(input.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Arrays.copyOf(digest, LENGTH));
+        } catch (NoSuchAlgorithmException e) {
+            // Todas las JVM deben implementar SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
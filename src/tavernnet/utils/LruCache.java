@@ -0,0 +1,76 @@
+package tavernnet.utils;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caché en memoria de tamaño acotado: al llenarse se descarta la entrada usada
+ * hace más tiempo, y cada entrada caduca pasado un tiempo desde que se guardó,
+ * para que los cambios hechos desde otra instancia acaben apareciendo.
+ * <br/>
+ * Es segura entre hilos. Todas las operaciones son O(1) y se sincronizan sobre
+ * la propia caché, lo que basta para cachés pequeñas y consultas cortas.
+ */
+@NullMarked
+public final class LruCache<K, V> {
+
+    private record Entry<V>(V value, long expiresAt) {}
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final long ttlNanos;
+    // Entradas descartadas por falta de espacio
+    private long evictions = 0;
+
+    /**
+     * @param capacity Número máximo de entradas.
+     * @param ttl Tiempo que se conserva cada entrada.
+     */
+    public LruCache(int capacity, Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+        // Con accessOrder, cada get mueve la entrada al final de la lista
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                boolean full = size() > capacity;
+                if (full) {
+                    evictions++;
+                }
+                return full;
+            }
+        };
+    }
+
+    /** @return El valor guardado, o <code>null</code> si no está o ha caducado */
+    public synchronized @Nullable V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() - System.nanoTime() < 0) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value();
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** @return Número de entradas descartadas hasta ahora por falta de espacio */
+    public synchronized long evictions() {
+        return evictions;
+    }
+}
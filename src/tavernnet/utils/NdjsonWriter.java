@@ -0,0 +1,56 @@
+package tavernnet.utils;
+
+import org.jspecify.annotations.NullMarked;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Respuestas en formato <a href="https://github.com/ndjson/ndjson-spec">NDJSON</a>:
+ * un objeto JSON por línea.
+ * <br/>
+ * A diferencia de devolver una lista, cada elemento se serializa y se escribe
+ * en la respuesta según se lee del cursor de MongoDB, por lo que la memoria
+ * usada no depende del número de resultados.
+ */
+@Component
+@NullMarked
+public class NdjsonWriter {
+    private static final byte NEWLINE = '\n';
+    private final ObjectMapper mapper;
+
+    @Autowired
+    public NdjsonWriter(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * @param source Abre el stream de elementos a escribir. Se llama cuando se
+     *               empieza a enviar la respuesta y el stream se cierra al
+     *               terminar, aunque haya errores.
+     * @return Respuesta <code>200 OK</code> con <code>application/x-ndjson</code>.
+     */
+    public <T> ResponseEntity<StreamingResponseBody> response(Supplier<Stream<T>> source) {
+        StreamingResponseBody body = out -> {
+            try (Stream<T> stream = source.get()) {
+                Iterator<T> elements = stream.iterator();
+                while (elements.hasNext()) {
+                    out.write(mapper.writeValueAsBytes(elements.next()));
+                    out.write(NEWLINE);
+                }
+            }
+        };
+
+        return ResponseEntity
+            .ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(body);
+    }
+}
@@ -0,0 +1,224 @@
+package tavernnet.utils;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import tavernnet.service.ResponseCacheService;
+import tavernnet.service.ResponseCacheService.CachedResponse;
+import tavernnet.service.ResponseCacheService.Lookup;
+import tavernnet.service.ViewService;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * Sirve desde Redis las respuestas de las consultas públicas más habituales
+ * (un post, un perfil y un personaje) a los usuarios no autenticados, que son
+ * los mismos para todos. Las peticiones autenticadas no se cachean, ya que la
+ * respuesta puede depender del usuario (p. ej. <code>likedByMe</code>).
+ * <br/>
+ * La clave es la URL canónica (ruta y parámetros ordenados), y cada respuesta
+ * se invalida por etiqueta desde los servicios que modifican los datos (ver
+ * {@link ResponseCacheService}). La cabecera <code>X-Cache</code> indica si la
+ * respuesta viene de la caché.
+ */
+@Component
+@NullMarked
+public class ResponseCacheFilter extends OncePerRequestFilter {
+
+    private static final String CACHE_HEADER = "X-Cache";
+
+    /**
+     * URL cacheable.
+     * @param tagPrefix Prefijo de la etiqueta con la que se invalida.
+     * @param variable Variable de la ruta que identifica la etiqueta.
+     * @param countsViews Si es la consulta de un post, cuyas visitas se
+     *                    registran aunque la respuesta venga de la caché.
+     */
+    private record Route(
+        PathPattern pattern,
+        String tagPrefix,
+        String variable,
+        Duration ttl,
+        boolean countsViews
+    ) {}
+
+    private final ResponseCacheService cache;
+    private final ViewService views;
+    private final List<Route> routes;
+
+    @Value("${http-cache.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    public ResponseCacheFilter(
+        ResponseCacheService cache,
+        ViewService views,
+        // Los contadores de los posts cambian sin invalidar la caché (ver README)
+        @Value("${http-cache.posts-ttl:PT10S}") Duration postsTtl,
+        @Value("${http-cache.users-ttl:PT5M}") Duration usersTtl
+    ) {
+        this.cache = cache;
+        this.views = views;
+
+        // Los ID de post son ObjectId: así no se incluyen /posts/trending, etc.
+        PathPatternParser parser = PathPatternParser.defaultInstance;
+        this.routes = List.of(
+            new Route(parser.parse("/posts/{postid:[0-9a-fA-F]{24}}"), "post:", "postid", postsTtl, true),
+            new Route(parser.parse("/users/{userid}"), "user:", "userid", usersTtl, false),
+            new Route(parser.parse("/users/{userid}/characters/{name}"), "user:", "userid", usersTtl, false)
+        );
+    }
+
+    @Override
+    protected void doFilterInternal(
+        HttpServletRequest request,
+        HttpServletResponse response,
+        FilterChain chain
+    ) throws ServletException, IOException {
+        Route route = enabled && isCacheable(request) ? route(request) : null;
+        String tag = route == null ? null : tag(route, request);
+        if (route == null || tag == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String key = canonicalUrl(request);
+        Lookup lookup = cache.get(key, tag);
+
+        // Si otra petición ya la está calculando, esperar a su resultado
+        boolean locked = false;
+        if (lookup.response() == null) {
+            locked = cache.tryLock(key);
+            if (!locked) {
+                try {
+                    lookup = cache.await(key, tag);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        if (lookup.response() != null) {
+            if (route.countsViews()) {
+                views.record(new ObjectId(tag.substring(route.tagPrefix().length())), null, request);
+            }
+            writeCached(request, response, lookup.response());
+            return;
+        }
+
+        // Calcular la respuesta, guardando una copia del cuerpo
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        wrapper.setHeader(CACHE_HEADER, "MISS");
+        try {
+            chain.doFilter(request, wrapper);
+            if (wrapper.getStatus() == HttpServletResponse.SC_OK && wrapper.getContentType() != null) {
+                Charset charset = Charset.forName(wrapper.getCharacterEncoding(), StandardCharsets.UTF_8);
+                cache.put(key, new CachedResponse(
+                    lookup.generation(),
+                    wrapper.getContentType(),
+                    wrapper.getHeader(HttpHeaders.ETAG),
+                    new String(wrapper.getContentAsByteArray(), charset)
+                ), route.ttl());
+            }
+        } finally {
+            if (locked) {
+                cache.unlock(key);
+            }
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    // ==== FUNCIONES DE AYUDA =================================================
+
+    /** Solo las consultas anónimas que aceptan JSON */
+    private static boolean isCacheable(HttpServletRequest request) {
+        if (!HttpMethod.GET.matches(request.getMethod())
+            || request.getHeader(HttpHeaders.AUTHORIZATION) != null
+        ) {
+            return false;
+        }
+
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        try {
+            return accept == null || MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(type -> type.isCompatibleWith(MediaType.APPLICATION_JSON));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    private @Nullable Route route(HttpServletRequest request) {
+        PathContainer path = PathContainer.parsePath(request.getRequestURI());
+        return routes.stream()
+            .filter(route -> route.pattern().matches(path))
+            .findFirst()
+            .orElse(null);
+    }
+
+    private static @Nullable String tag(Route route, HttpServletRequest request) {
+        PathPattern.PathMatchInfo match = route.pattern()
+            .matchAndExtract(PathContainer.parsePath(request.getRequestURI()));
+        return match == null ? null : route.tagPrefix() + match.getUriVariables().get(route.variable());
+    }
+
+    /** Ruta y parámetros en orden alfabético, para que coincidan las claves */
+    private static String canonicalUrl(HttpServletRequest request) {
+        StringJoiner query = new StringJoiner("&", "?", "").setEmptyValue("");
+        new TreeMap<>(request.getParameterMap()).forEach((name, values) -> {
+            for (String value : values) {
+                query.add(URLEncoder.encode(name, StandardCharsets.UTF_8)
+                    + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+        });
+        return request.getRequestURI() + query;
+    }
+
+    private static void writeCached(
+        HttpServletRequest request,
+        HttpServletResponse response,
+        CachedResponse cached
+    ) throws IOException {
+        response.setHeader(CACHE_HEADER, "HIT");
+
+        // Si el cliente ya tiene esta versión, basta con un 304 Not modified
+        if (cached.etag() != null
+            && new ServletWebRequest(request, response).checkNotModified(cached.etag())
+        ) {
+            return;
+        }
+
+        byte[] body = cached.body().getBytes(StandardCharsets.UTF_8);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(cached.contentType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentLength(body.length);
+        if (cached.etag() != null) {
+            response.setHeader(HttpHeaders.ETAG, cached.etag());
+        }
+        response.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,178 @@
+import os
+import random
+import statistics
+import sys
+import time
+from datetime import datetime, timedelta
+
+import requests
+from bson import ObjectId
+from pymongo import MongoClient
+
+'''
+Benchmark de `GET /posts/search` sobre un corpus generado.
+
+Inserta posts y comentarios sintéticos directamente en MongoDB en varios
+tamaños crecientes y, para cada tamaño, mide la latencia de la búsqueda (primera
+página y páginas siguientes) y comprueba con `explain` que la consulta usa el
+índice de texto. Si el índice funciona, la latencia debería mantenerse plana
+aunque crezca el corpus. Al terminar se borran los documentos generados.
+
+Ejecución: `python3 bench_search.py [tamaño ...]` \\
+Por defecto: 1000 10000 100000 posts (y 3 comentarios por post).
+
+Como MongoDB no se expone fuera de Docker, se puede ejecutar dentro del
+contenedor del servidor de desarrollo (`compose.dev.yaml` monta `./test`):
+
+```bash
+docker compose -f compose.dev.yaml exec server python3 test/bench_search.py
+```
+
+Variables de entorno: `SITE` (por defecto `http://localhost:8080`) y
+`MONGO_URL` (por defecto `mongodb://mongo:27017`).
+
+Requisitos: requests, pymongo
+'''
+
+# ==== DEFINICIONES GLOBALES ==================================================
+
+SITE = os.environ.get('SITE', 'http://localhost:8080')
+MONGO_URL = os.environ.get('MONGO_URL', 'mongodb://mongo:27017')
+DATABASE = 'tavernnet'
+
+DEFAULT_SIZES = [1_000, 10_000, 100_000]
+COMMENTS_PER_POST = 3
+INSERT_BATCH = 5_000
+REPETITIONS = 30
+PAGE_SIZE = 10
+
+# Vocabulario del corpus. Las palabras raras aparecen en pocos documentos, de
+# forma que se miden tanto búsquedas selectivas como muy generales
+COMMON_WORDS = [
+    'taberna', 'aventura', 'dragón', 'espada', 'hechizo', 'mazmorra', 'tesoro',
+    'posada', 'camino', 'bosque', 'montaña', 'castillo', 'rey', 'goblin',
+    'enano', 'elfo', 'mago', 'guerrero', 'pícaro', 'clérigo', 'batalla',
+    'misión', 'recompensa', 'oro', 'poción', 'flecha', 'escudo', 'armadura',
+]
+RARE_WORDS = ['beholder', 'liche', 'tarrasque', 'mimic', 'illithid']
+QUERIES = ['dragón', 'taberna oro', 'beholder', '"espada mágica"', 'liche -goblin']
+
+# Marca de los documentos generados, para poder borrarlos al terminar
+BENCH_MARK = 'bench_search'
+
+
+# ==== GENERACIÓN DEL CORPUS ==================================================
+
+def sentence(words: int) -> str:
+    chosen = random.choices(COMMON_WORDS, k=words)
+    if random.random() < 0.01:
+        chosen[random.randrange(words)] = random.choice(RARE_WORDS)
+    if random.random() < 0.05:
+        chosen.append('espada mágica')
+    return ' '.join(chosen).capitalize()
+
+
+def generate(db, count: int, authors: list[ObjectId]):
+    start = datetime.now()
+    posts, comments = [], []
+
+    def flush():
+        if posts:
+            db.posts.insert_many(posts, ordered=False)
+            posts.clear()
+        if comments:
+            db.comments.insert_many(comments, ordered=False)
+            comments.clear()
+
+    for i in range(count):
+        post_id = ObjectId()
+        date = start - timedelta(seconds=i)
+        posts.append({
+            '_id': post_id,
+            'author': random.choice(authors),
+            'title': sentence(5),
+            'content': sentence(40),
+            'date': date,
+            'n_likes': 0,
+            'n_comments': COMMENTS_PER_POST,
+            BENCH_MARK: True,
+        })
+        for _ in range(COMMENTS_PER_POST):
+            comments.append({
+                '_id': ObjectId(),
+                'content': sentence(15),
+                'post': post_id,
+                'author': random.choice(authors),
+                'date': date,
+                BENCH_MARK: True,
+            })
+        if len(posts) >= INSERT_BATCH:
+            flush()
+    flush()
+
+
+def cleanup(db):
+    db.posts.delete_many({BENCH_MARK: True})
+    db.comments.delete_many({BENCH_MARK: True})
+
+
+# ==== MEDICIONES =============================================================
+
+def uses_text_index(db, collection: str, query: str) -> bool:
+    plan = db.command(
+        'explain',
+        {'find': collection, 'filter': {'$text': {'$search': query}}, 'limit': PAGE_SIZE},
+        verbosity='queryPlanner',
+    )
+    return 'TEXT' in str(plan['queryPlanner']['winningPlan'])
+
+
+def measure(query: str) -> tuple[list[float], list[float]]:
+    '''Latencias (ms) de la primera página y de la siguiente'''
+    first, next_pages = [], []
+    for _ in range(REPETITIONS):
+        t = time.perf_counter()
+        r = requests.get(f'{SITE}/posts/search', params={'q': query, 'limit': PAGE_SIZE})
+        first.append((time.perf_counter() - t) * 1000)
+        assert r.status_code == 200, f'{r.status_code}: {r.text}'
+
+        cursor = r.json().get('next_cursor')
+        if cursor is not None:
+            t = time.perf_counter()
+            r = requests.get(f'{SITE}/posts/search', params={'q': query, 'limit': PAGE_SIZE, 'after': cursor})
+            next_pages.append((time.perf_counter() - t) * 1000)
+            assert r.status_code == 200, f'{r.status_code}: {r.text}'
+    return first, next_pages
+
+
+def summary(latencies: list[float]) -> str:
+    if not latencies:
+        return '-'
+    latencies = sorted(latencies)
+    p95 = latencies[int(len(latencies) * 0.95) - 1]
+    return f'p50 {statistics.median(latencies):7.1f} ms  p95 {p95:7.1f} ms'
+
+
+# ==== PROGRAMA PRINCIPAL =====================================================
+
+if __name__ == '__main__':
+    sizes = [int(arg) for arg in sys.argv[1:]] or DEFAULT_SIZES
+    db = MongoClient(MONGO_URL)[DATABASE]
+    authors = [c['_id'] for c in db.characters.find({}, {'_id': 1})] or [ObjectId()]
+
+    try:
+        inserted = 0
+        for size in sorted(sizes):
+            t = time.perf_counter()
+            generate(db, size - inserted, authors)
+            inserted = size
+            print(f'\n==== {size} posts, {size * COMMENTS_PER_POST} comments '
+                  f'(generated in {time.perf_counter() - t:.1f} s) ====')
+
+            for query in QUERIES:
+                indexed = uses_text_index(db, 'posts', query) and uses_text_index(db, 'comments', query)
+                first, next_pages = measure(query)
+                print(f'{query:<20} first: {summary(first)}   next: {summary(next_pages)}'
+                      f'   {"text index" if indexed else "WARN: NO TEXT INDEX"}')
+    finally:
+        cleanup(db)
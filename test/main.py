@@ -212,6 +212,24 @@ def test_noauth_user(user: User):
     r = requests.get(f'{SITE}/users?search={NEW_USER_PREFIX}&page=-1')
     check(r, HTTPStatus.UNPROCESSABLE_ENTITY)
 
+    # Modo de recuento: por defecto `cached`, que cuenta todo (`exact`) si
+    # no tiene un recuento reciente. El índice de Redis siempre da el total
+    # exacto, así que cualquier modo puede responder `exact`
+    r = requests.get(f'{SITE}/users?search={NEW_USER_PREFIX}')
+    check(r, HTTPStatus.OK)
+    count_mode = r.json()['count_mode']
+    assert count_mode in ('exact', 'cached'), f'default count_mode is {count_mode}'
+
+    for mode in ('exact', 'estimated', 'cached'):
+        r = requests.get(f'{SITE}/users?search={NEW_USER_PREFIX}&count_mode={mode}')
+        check(r, HTTPStatus.OK)
+        count_mode = r.json()['count_mode']
+        assert count_mode in (mode, 'exact'), f'count_mode={mode} reported {count_mode}'
+
+    # Modo no válido
+    r = requests.get(f'{SITE}/users?search={NEW_USER_PREFIX}&count_mode=guessed')
+    check(r, HTTPStatus.BAD_REQUEST)
+
     # CREAR USUARIO
     # NOTA: el usuario ya se creó en test_setup()
     # Repetido
@@ -242,6 +260,12 @@ def test_noauth_user(user: User):
     assert len(recv_character_names_set) == len(recv_character_names), f'There are {len(recv_character_names) - len(recv_character_names_set)} repeated names'
     assert user.character.name in recv_character_names, 'Created character not found in response'
 
+    # Petición condicional: sin cambios, 304
+    etag = r.headers.get('ETag')
+    assert etag is not None, 'GET /users/{userid} has no ETag'
+    r = requests.get(f'{SITE}/users/{user.username}', headers={'If-None-Match': etag})
+    check(r, HTTPStatus.NOT_MODIFIED)
+
 
     # CONSULTAR PERSONAJES
     print('\n==== CHARACTERS ====')
@@ -275,6 +299,15 @@ def test_noauth_user(user: User):
     r = requests.get(f'{SITE}/users/{user.username}/characters/{user.character.name}')
     check(r, HTTPStatus.OK)
 
+    # Petición condicional: sin cambios, 304
+    etag = r.headers.get('ETag')
+    assert etag is not None, 'GET /users/{userid}/characters/{name} has no ETag'
+    r = requests.get(
+        f'{SITE}/users/{user.username}/characters/{user.character.name}',
+        headers={'If-None-Match': etag}
+    )
+    check(r, HTTPStatus.NOT_MODIFIED)
+
 
 def test_noauth_post():
     print('\n==== POSTS ====')
@@ -767,6 +800,16 @@ def test_auth_characters(login: LoginUser, headers: dict[str,str]):
     )
     check(r, HTTPStatus.UNPROCESSABLE_ENTITY)
 
+    # ETags antes de modificarlo: el perfil del usuario incluye el personaje
+    user_url = f'{SITE}/users/{login.username}'
+    char_url = f'{SITE}/users/{login.username}/characters/{login.character.name}'
+    etags = {}
+    for url in (user_url, char_url):
+        r = requests.get(url)
+        check(r, HTTPStatus.OK)
+        etags[url] = r.headers.get('ETag')
+        assert etags[url] is not None, f'GET {url} has no ETag'
+
     # Correcto
     r = requests.patch(
         f'{SITE}/users/{login.username}/characters/{login.character.name}',
@@ -779,6 +822,13 @@ def test_auth_characters(login: LoginUser, headers: dict[str,str]):
     stat_strength = r.json().get('stats').get('strength')
     assert stat_strength == 12, f'Expected 12, got {stat_strength}'
 
+    # Tras el cambio, la petición condicional devuelve el recurso nuevo
+    for url in (user_url, char_url):
+        r = requests.get(url, headers={'If-None-Match': etags[url]})
+        check(r, HTTPStatus.OK)
+        new_etag = r.headers.get('ETag')
+        assert new_etag is not None and new_etag != etags[url], f'GET {url} kept ETag {etags[url]} after PATCH'
+
 
     # BORRAR PERSONAJE
     # Requiere login
@@ -825,9 +875,9 @@ def test_auth_user(login: LoginUser, headers: dict[str,str]):
     r = requests.delete(f'{SITE}/users/{login.username}', headers=headers)
     check(r, HTTPStatus.NO_CONTENT)
 
-    # No existe ahora
+    # Al borrarse se han cerrado sus sesiones: el JWT ya no vale
     r = requests.delete(f'{SITE}/users/{login.username}', headers=headers)
-    check(r, HTTPStatus.NOT_FOUND)
+    check(r, HTTPStatus.UNAUTHORIZED)
 
     # Comprobar que no se puede hacer refresh
     r = requests.post(